@@ -0,0 +1,84 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Graph handles of the accounts of an AccountRegistry, by ordinal.
+ * 
+ * Step 2 gives an account its node once and steps 3 to 5 find the node of an account with an array lookup, 
+ * instead of looking it up by account number in the graph (a query on Neo4j) for every pair.
+ * Handles stay valid when the graph is bulk loaded, since the loaded store keeps the handles of the graph.
+ */
+public class AccountHandles {
+
+	AccountRegistry accounts;
+	GraphBackend graph;
+	int[] handles;  // ordinal -> handle, -1 if the account has no node yet
+	
+	
+	public AccountHandles(AccountRegistry accounts, GraphBackend graph)
+	{
+		this.accounts = accounts;
+		this.graph = graph;
+		handles = new int[accounts.size()];
+		Arrays.fill(handles, -1);
+	}
+	
+	
+	// handle of the account, adding its node to the graph if it has none
+	public int upsert(FinancialNode account)
+	{
+		if (account.ordinal < 0)
+			return graph.upsertNode(account.name);
+		
+		if (handles[account.ordinal] < 0)
+			handles[account.ordinal] = graph.upsertNode(account.name);
+		return handles[account.ordinal];
+	}
+	
+	
+	// handle of a node of the graph by its id, -1 if the graph does not have it. Ids of the registry are 
+	// found by ordinal, other ids (shared nodes) in the graph
+	public int find(long id)
+	{
+		int ordinal = id == (int) id ? accounts.ordinal((int) id) : -1;
+		if (ordinal < 0)
+			return graph.findNode(id);
+		
+		if (handles[ordinal] < 0)
+			handles[ordinal] = graph.findNode(id);
+		return handles[ordinal];
+	}
+	
+	
+	// the graph the handles are in, after it has been bulk loaded into another backend with the same handles
+	public void moveTo(GraphBackend graph)
+	{
+		this.graph = graph;
+	}
+	
+}
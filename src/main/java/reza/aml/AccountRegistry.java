@@ -0,0 +1,127 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Registry of accounts. 
+ * 
+ * Every account number is interned once and given a dense ordinal 0..N-1, in the order the accounts 
+ * are first seen (nodes.txt first, then transactions.txt). Ordinals are used to index arrays instead of 
+ * looking accounts up by number. Each account has one shared FinancialNode.
+ */
+public class AccountRegistry {
+
+	int size;
+	int[] accounts = new int[16];  // ordinal -> account number
+	FinancialNode[] nodes = new FinancialNode[16];  // ordinal -> shared node, created on first use
+	
+	// open addressing table: account number -> ordinal + 1 (0 is an empty slot) 
+	int[] keys = new int[32];
+	int[] values = new int[32];
+	
+	
+	// returns the ordinal of the account, registering it if it is new
+	public int intern(int account)
+	{
+		int slot = slot(account);
+		if (values[slot] != 0)
+			return values[slot] - 1;
+		
+		if (size == accounts.length)
+		{
+			accounts = Arrays.copyOf(accounts, size * 2);
+			nodes = Arrays.copyOf(nodes, size * 2);
+		}
+		accounts[size] = account;
+		keys[slot] = account;
+		values[slot] = ++size;
+		
+		// keep the table at most half full
+		if (size * 2 > keys.length)
+			rehash();
+		
+		return size - 1;
+	}
+	
+	
+	// returns the ordinal of the account, -1 if it is not registered
+	public int ordinal(int account)
+	{
+		return values[slot(account)] - 1;
+	}
+	
+	
+	public int account(int ordinal)
+	{
+		return accounts[ordinal];
+	}
+	
+	
+	public FinancialNode node(int ordinal)
+	{
+		if (nodes[ordinal] == null)
+		{
+			FinancialNode node = new FinancialNode();
+			node.name = accounts[ordinal];
+			node.ordinal = ordinal;
+			nodes[ordinal] = node;
+		}
+		return nodes[ordinal];
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	
+	// slot of the account, or the empty slot where it would be inserted (linear probing)
+	int slot(int account)
+	{
+		int mask = keys.length - 1;
+		int hash = account * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (values[slot] != 0 && keys[slot] != account)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+	
+	
+	void rehash()
+	{
+		keys = new int[keys.length * 2];
+		values = new int[values.length * 2];
+		for (int ordinal = 0; ordinal < size; ordinal++)
+		{
+			int slot = slot(accounts[ordinal]);
+			keys[slot] = accounts[ordinal];
+			values[slot] = ordinal + 1;
+		}
+	}
+	
+}
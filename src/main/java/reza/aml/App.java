@@ -30,32 +30,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
-import org.neo4j.cypher.javacompat.ExecutionEngine;
-import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.graphdb.Direction;
-import org.neo4j.graphdb.DynamicLabel;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Label;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.factory.GraphDatabaseFactory;
-import org.neo4j.kernel.impl.util.StringLogger;
-import org.neo4j.tooling.GlobalGraphOperations;
+import java.util.Properties;
 
 
 public class App 
@@ -64,26 +45,50 @@ public class App
 	//  ALGORITHM PARAMETERS
 	static double degreeConstant = 0.1; // step 3 - bscore  (weight of edges), .8 for at least 7 incoming and outgoing  
 	
+	static int maxBalanceCandidates = 0; // step 3 - keep only this many nodes with the highest B for step 4, 0 keeps every node above degreeConstant
+	static boolean printBalanceScores = false; // step 3 - log every node with B >= 0 sorted by B, not only the selected high risk nodes. Sorts every node
+	
 	//  ALGORITHM PARAMETERS
 	static double densePairConstant = 0.2;  // step 4 - SHRINK (similarity of two nodes), affected by the weight of the edges (i.e. balance and number of incoming and outgoing). 0.23 is two (sender, receiver) common neighbour
+	static int maxPrintedMatrixSize = 200; // step 4 - the similarity matrix is printed as a grid up to this many nodes, above it only the non-zero pairs are printed
+	static boolean pruneSimilarity = false; // step 4 - skip pairs whose upper bound (from weight sums, maximum weights and norms) is below densePairConstant. Same dense pairs, the similarity matrix only shows the scored pairs
+	static boolean approximateSimilarity = false; // step 4 - only score the pairs proposed by MinHash/LSH (probably similar), for very large numbers of high risk nodes
+	static int lshBands = 32; // step 4 - MinHash/LSH bands, more bands find more of the dense pairs
+	static int lshRows = 1; // step 4 - MinHash/LSH hashes per band (of each side), more rows propose fewer pairs
+	static int lshMaxBucketSize = 1000; // step 4 - MinHash/LSH buckets with more candidates are skipped instead of proposing all of their pairs, must be positive
+	static boolean lshRecall = false; // step 4 - also run the exact SHRINK and report the share of its dense pairs found by MinHash/LSH
+	static int similarityParallelism = 1; // step 4 - number of threads scoring blocks of candidate pairs, 1 runs on the main thread
+	static boolean similaritySpeedup = false; // step 4 - also score the pairs again with 1, 2, 4 .. similarityParallelism threads and report the time and speedup of each
 
 	//  FINANCIAL PARAMETERS
 	static double amountThreshold = 10000;  // transaction should be 10000 
 	static double allowedAmountDifference = 100.0; // transactions can be different as much as the following amount
 	static double allowedTimeDifference = 2; // transactions can be apart as much as the following value
+	
+	//  MATCHING PARAMETERS
+	static boolean slidingWindowMatching = false; // step 1 - sort transactions by time per account and only compare transactions inside the window of the time variance function
+	static String timeVarianceFunction = "directional"; // absolute, directional or decaying. Only used by sliding window matching
+	static double timeVarianceHalfLife = 1; // decaying time variance function halves the score of a pair every half-life
+	static int matchingParallelism = 1; // step 1 - number of threads matching intermediate accounts in parallel, 1 runs on the main thread. The chain matcher always runs on the main thread
+	static int maxChainDepth = 1; // step 1 - maximum number of intermediates in a layering chain (u->v1->..->vk->w). More than 1 uses the chain matcher
+	static double allowedChainAmountDrift = 200.0; // step 1 - amounts in a chain can be different from the first transaction of the chain as much as this amount. Below allowedAmountDifference it also rejects single hops
+	static int chainSearchBudget = 10000; // step 1 - the chain matcher tries at most this many hops from each starting transaction and keeps the longest chain found
 		
 	//  DATA PARAMETERS
 	static boolean generateData = true;  // should the framework generate data. Once data is generated disable this flag to avoid overwriting your data!
 	static boolean generateDataAndExit = false; // exit after generation. Only generate data
+	static int inputParallelism = 1; // number of threads parsing chunks of nodes.txt and transactions.txt, 1 reads on the main thread
+	static boolean binaryTransactions = false; // keep transactions.bin, a binary copy of nodes.txt and transactions.txt, and read it instead of them while both still have the size and time it was written from
 	
 	static boolean demo = false; // bypasses all checks and display the entire graph . This feature is no longer used
 	static boolean experimentActive = false;  // activate part 3.5 or not. not used in current version of paper due to low accuracy for all topologies. 
+	static int maxSharedPathLength = 6;  // step 3.5 - edges of the longest sender to receiver path searched for intermediates
+	static long maxSharedPaths = 100000;  // step 3.5 - stop the path search after this many sender to receiver paths, 0 skips the search
+	static boolean bulkLoadGraph = false; // step 2 - build the graph in memory and write the Neo4j store at once with the batch inserter
+	static boolean incrementalGraph = false; // step 2 - keep the Neo4j store between runs and only add the pairs of transactions appended to transactions.txt since the last run
+	static boolean writeBalanceScores = false; // step 3 - write B and the weight sums to the nodes of the graph
+	static boolean inMemoryGraph = false; // steps 2-5 - keep the graph in memory (compressed sparse row) instead of the embedded Neo4j store
 	
-	enum TransactionTypes implements RelationshipType
-	{
-		SEND, RECEIVE
-	}
-
 	// Main method 
 	public static void main( String[] args ) throws IOException
 	{
@@ -135,6 +140,34 @@ public class App
 		System.out.println("amountThreshold:" + amountThreshold);
 		System.out.println("allowedAmountDifference:" + allowedAmountDifference);
 		System.out.println("allowedTimeDifference:" + allowedTimeDifference);
+		if (slidingWindowMatching)
+			System.out.println("timeVarianceFunction:" + timeVarianceFunction);
+		System.out.println("inputParallelism:" + inputParallelism);
+		System.out.println("binaryTransactions:" + binaryTransactions);
+		System.out.println("matchingParallelism:" + matchingParallelism);
+		System.out.println("maxChainDepth:" + maxChainDepth);
+		if (maxChainDepth > 1)
+			System.out.println("allowedChainAmountDrift:" + allowedChainAmountDrift + " chainSearchBudget:" + chainSearchBudget);
+		System.out.println("inMemoryGraph:" + inMemoryGraph);
+		System.out.println("bulkLoadGraph:" + bulkLoadGraph);
+		System.out.println("incrementalGraph:" + incrementalGraph);
+		System.out.println("writeBalanceScores:" + writeBalanceScores);
+		System.out.println("maxBalanceCandidates:" + maxBalanceCandidates);
+		System.out.println("printBalanceScores:" + printBalanceScores);
+		System.out.println("pruneSimilarity:" + pruneSimilarity);
+		System.out.println("similarityParallelism:" + similarityParallelism);
+		System.out.println("similaritySpeedup:" + similaritySpeedup);
+		System.out.println("approximateSimilarity:" + approximateSimilarity);
+		if (approximateSimilarity)
+			System.out.println("lshBands:" + lshBands + " lshRows:" + lshRows + " lshMaxBucketSize:" + lshMaxBucketSize);
+		if (approximateSimilarity && lshMaxBucketSize <= 0)
+		{
+			// every pair of a bucket holding most candidates does not fit an array
+			System.out.println("lshMaxBucketSize must be positive");
+			return;
+		}
+		if (experimentActive)
+			System.out.println("maxSharedPathLength:" + maxSharedPathLength + " maxSharedPaths:" + maxSharedPaths);
 		
 		
 		// Output_summary.txt
@@ -148,14 +181,78 @@ public class App
 		fw.write("\namountThreshold:" + amountThreshold);
 		fw.write("\nallowedAmountDifference:" + allowedAmountDifference);
 		fw.write("\nallowedTimeDifference:" + allowedTimeDifference);
+		if (slidingWindowMatching)
+			fw.write("\ntimeVarianceFunction:" + timeVarianceFunction);
+		fw.write("\ninputParallelism:" + inputParallelism);
+		fw.write("\nbinaryTransactions:" + binaryTransactions);
+		fw.write("\nmatchingParallelism:" + matchingParallelism);
+		fw.write("\nmaxChainDepth:" + maxChainDepth);
+		if (maxChainDepth > 1)
+			fw.write("\nallowedChainAmountDrift:" + allowedChainAmountDrift + " chainSearchBudget:" + chainSearchBudget);
+		fw.write("\ninMemoryGraph:" + inMemoryGraph);
+		fw.write("\nbulkLoadGraph:" + bulkLoadGraph);
+		fw.write("\nincrementalGraph:" + incrementalGraph);
+		fw.write("\nwriteBalanceScores:" + writeBalanceScores);
+		fw.write("\nmaxBalanceCandidates:" + maxBalanceCandidates);
+		fw.write("\nprintBalanceScores:" + printBalanceScores);
+		fw.write("\npruneSimilarity:" + pruneSimilarity);
+		fw.write("\nsimilarityParallelism:" + similarityParallelism);
+		fw.write("\nsimilaritySpeedup:" + similaritySpeedup);
+		fw.write("\napproximateSimilarity:" + approximateSimilarity);
+		if (approximateSimilarity)
+			fw.write("\nlshBands:" + lshBands + " lshRows:" + lshRows + " lshMaxBucketSize:" + lshMaxBucketSize);
+		if (experimentActive)
+			fw.write("\nmaxSharedPathLength:" + maxSharedPathLength + " maxSharedPaths:" + maxSharedPaths);
 		fw.close();
 	
 		
-		// Nodes.txt
-		ArrayList<String> nodes = Input.readNodes("nodes.txt");
+		AccountRegistry accounts;
+		int nodeCount;
+		TransactionStore transactions;
+		int maxAmount = Integer.MAX_VALUE;  // largest amount of transactions.txt, only known from the header of transactions.bin
+		TransactionFile transactionFile = null;
+		if (binaryTransactions && TransactionFile.isCurrent("transactions.bin", "nodes.txt", "transactions.txt"))
+		{
+			// binary copy of nodes.txt and transactions.txt written by an earlier run
+			try {
+				transactionFile = TransactionFile.read("transactions.bin");
+			}
+			catch (IOException e)
+			{
+				System.out.println("Could not read transactions.bin, reading nodes.txt and transactions.txt instead: " + e.getMessage());
+			}
+		}
 		
-		// Transactions.txt
-		ArrayList<FinancialTransaction> transactions = Input.readTransactions("transactions.txt");
+		if (transactionFile != null)
+		{
+			transactions = transactionFile.transactions();
+			accounts = transactions.accounts();
+			nodeCount = transactionFile.nodes();
+			maxAmount = transactionFile.max(TransactionFile.AMOUNT);
+			System.out.println("Read " + transactionFile.rows() + " transactions from transactions.bin, amounts " + transactionFile.min(TransactionFile.AMOUNT) + " to " + transactionFile.max(TransactionFile.AMOUNT) 
+					+ ", times " + transactionFile.min(TransactionFile.TIME) + " to " + transactionFile.max(TransactionFile.TIME));
+		}
+		else
+		{
+			// Nodes.txt, every account gets a dense ordinal
+			accounts = Input.readAccounts("nodes.txt", inputParallelism);
+			nodeCount = accounts.size();
+			
+			// Transactions.txt
+			transactions = Input.readTransactionStore("transactions.txt", accounts, inputParallelism);
+			if (binaryTransactions)
+			{
+				// the run goes on with the parsed text if the binary copy cannot be written
+				try {
+					TransactionFile.write("transactions.bin", transactions, nodeCount, "nodes.txt", "transactions.txt");
+				}
+				catch (IOException e)
+				{
+					System.out.println("Could not write transactions.bin: " + e.getMessage());
+					new File("transactions.bin").delete();
+				}
+			}
+		}
 
 
 		
@@ -170,91 +267,80 @@ public class App
 		else
 			System.out.println("----------------------- step 1 \n Finding matching transactions ");
 		
-		HashMap<FinancialTransaction, FinancialTransaction> pairs = new HashMap<FinancialTransaction, FinancialTransaction>();
-		HashMap< HashMap<FinancialTransaction, FinancialTransaction>, Double> similarityOfTransactions = new HashMap< HashMap<FinancialTransaction, FinancialTransaction>, Double> ();
+		HashMap<FinancialTransaction, FinancialTransaction> pairs;
 		double time1 =  System.currentTimeMillis();
 		
+		// the store is kept if the transactions it has are still the first transactions of the file 
+		// and were matched with the same parameters, step 1 then only matches the appended transactions
+		int watermark = 0;  // transactions before this index are already in the graph of a previous run
+		boolean appendOnlyPairs = !slidingWindowMatching && maxChainDepth <= 1;  // appended transactions only add pairs, the pairs of the store stay valid
+		Properties matchingParameters = matchingParameters();
+		if (incrementalGraph && !inMemoryGraph)
+		{
+			Properties previous = Neo4jGraphBackend.readWatermark("neo4j-store");
+			int stored = Integer.parseInt(previous.getProperty("transactions", "0"));
+			int lastTransactionId = Integer.parseInt(previous.getProperty("lastTransactionId", "0"));
+			String changed = null;
+			for (String name : matchingParameters.stringPropertyNames())
+				if (!matchingParameters.getProperty(name).equals(previous.getProperty(name)))
+					changed = name;
+			
+			if (!appendOnlyPairs)
+				System.out.println("Pairs of the sliding window and chain matchers can change when transactions are appended, rebuilding the store");
+			else if (stored > 0 && changed != null)
+				System.out.println(changed + " is not the one the store was matched with, rebuilding the store");
+			else if (stored > 0 && stored <= transactions.size() && transactions.id(stored - 1) == lastTransactionId)
+				watermark = stored;
+			else
+				System.out.println("Transactions of the store are not in transactions.txt, rebuilding the store");
+		}
 		
 		int i = 0;
 		int j = 1;
-		boolean found = false;
-
 		
-		for (i=0;i<transactions.size();i++)
+		// if this is a demo or we just generated the data and want to see full graph
+		if (demo)
 		{
-
-			for (j=0;j<transactions.size();j++)
-			{
-
-				//System.out.println(".");
-				// if looking at same 
-				if (i == j)
-					continue;
-				
-				// the map pair contains transactions already processed 
-				// dont look at existing items in P. Unique transactions on either side of pair <L, R>
-				// needs investigation..
-				if (pairs.containsKey(transactions.get(i)))
-				{
-					continue;
-				}
-				if  (pairs.containsValue(transactions.get(j)))
-				{
-					continue;
-				}
-
-
-				
-				Double amountDifference = (double) Math.abs((transactions.get(i).amount - transactions.get(j).amount));
-				Integer timeDifference = transactions.get(i).time - transactions.get(j).time;
-
-				
-				
+			pairs = new HashMap<FinancialTransaction, FinancialTransaction>();
+			for (FinancialTransaction t : transactions.asList())
+				pairs.put(t, null);
+		}
+		else if (maxAmount < amountThreshold)
+		{
+			// no incoming transaction reaches amountThreshold, so nothing can match
+			System.out.println("Largest amount " + maxAmount + " is below amountThreshold, no transaction to match");
+			pairs = new HashMap<FinancialTransaction, FinancialTransaction>();
+		}
+		else
+		{
+			// transactions are indexed by intermediate account, so only transactions of the form u->v v->w are compared
+			TransactionMatcher matcher;
+			if (slidingWindowMatching)
+				matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, 
+						TimeVarianceFunction.forName(timeVarianceFunction, allowedTimeDifference, timeVarianceHalfLife));
+			else
+				matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+			matcher.parallelism = matchingParallelism;
 			
+			if (maxChainDepth > 1)
+			{
+				// every hop of a chain becomes a pair, chains are searched on the main thread
+				ChainMatcher chainMatcher = new ChainMatcher(matcher, allowedChainAmountDrift, maxChainDepth, chainSearchBudget);
+				pairs = chainMatcher.match(transactions);
 				
-				// if this is a demo or we just generated the data and want to see full graph
-				if (demo)
-				{ 
-					pairs.put(transactions.get(i), null);
-					
-					continue;
-				}
-
-
-				// if it has the form u->v v->w
-				if (transactions.get(j).sender.name == transactions.get(i).receiver.name )
-	
-				// amount equal or higher than 10000
-				// condition 1 of trx matching algorithm 
-				if (transactions.get(i).amount >= amountThreshold)
-				{ 
-					//System.out.println("Comparing " + transactions.get(i).amount + " and " + transactions.get(j).amount) ;
-
-					// if sending and receiving amounts are same or similar above certain threshold ex. $100
-					// condition 2 of trx matching algorithm 
-					if (amountDifference <= allowedAmountDifference)
-					{
-
-						// within same timeframe. This is the simplified version
-						// todo: implement time variance function
-						if (timeDifference <= allowedTimeDifference)
-						{
-							// store so the pair of t
-							pairs.put(transactions.get(i), transactions.get(j)); 
-							
-							System.out.println(".");
-							// store the matching transactions along with their difference in terms of amount and time
-							similarityOfTransactions.put(pairs, 1 / (amountDifference * timeDifference));  // include the difference between transactions
-							//found = true;
-							//break;
-							//	break; //only one 
-
-						}
-					}
-
-				}
-
-			}  
+				int[] chainsByDepth = new int[maxChainDepth + 1];
+				for (int[] chain : chainMatcher.chains)
+					chainsByDepth[chain.length - 1]++;
+				for (int depth = 1; depth <= maxChainDepth; depth++)
+					System.out.println("Chains with " + depth + " intermediates: " + chainsByDepth[depth]);
+			}
+			else
+			{
+				// only the intermediate accounts of the appended transactions can have new pairs
+				if (watermark > 0)
+					System.out.println("Matching the " + (transactions.size() - watermark) + " transactions appended since the last run");
+				pairs = matcher.match(transactions, watermark);
+			}
 		}
 
 		double time2 =  System.currentTimeMillis();
@@ -264,25 +350,28 @@ public class App
 	
 			
 		if (pairs.isEmpty())
-			System.out.println("There are no matching transactions!");
+			System.out.println(watermark > 0 ? "There are no new matching transactions!" : "There are no matching transactions!");
 	
 		// ************************************************************************************
 		// ************************************************************************************
 		// step 2: make graph of matching transactions
 		System.out.println("----------------------- step 2 \n Making graph...");
 
-		GraphDatabaseService graphDb = null;
-		GlobalGraphOperations GOp = null;
+		GraphBackend graph = null;
+		boolean graphComplete = true;  // false if adding a pair failed
 
 		double time2_1 =  System.currentTimeMillis();
 		try {
 			
-			// reset database 
-			removeDirectory("neo4j-store");
-			
-			graphDb = new GraphDatabaseFactory().newEmbeddedDatabase( "neo4j-store" );
-			GOp = GlobalGraphOperations.at(graphDb);
-			registerShutdownHook( graphDb );
+			if (watermark > 0)
+			{
+				graph = Neo4jGraphBackend.open("neo4j-store");
+				System.out.println("Opened the store with " + graph.nodeCount() + " nodes, adding the pairs of the " + (transactions.size() - watermark) + " new transactions");
+			}
+			else if (inMemoryGraph || bulkLoadGraph)
+				graph = new CsrGraphBackend();  // bulk load aggregates the edges in memory first
+			else
+				graph = new Neo4jGraphBackend("neo4j-store");  // reset database 
 		}
 		
 		catch (Exception e)
@@ -292,20 +381,20 @@ public class App
 		}
 
 
-		String query;
-		ExecutionResult result;
-
-		ExecutionEngine engine = new ExecutionEngine( graphDb, StringLogger.DEV_NULL );
-
-
-
+		// node of every account, by registry ordinal, so each account is only looked up in the graph once
+		AccountHandles handles = new AccountHandles(accounts, graph);
+		
 		Iterator it = pairs.entrySet().iterator();
 		while (it.hasNext()) {
 			Map.Entry<FinancialTransaction, FinancialTransaction> onepair = (Map.Entry) it.next();
 
+			// both transactions were added by a previous run
+			if (onepair.getKey().index < watermark && (onepair.getValue() == null || onepair.getValue().index < watermark))
+				continue;
+
 			System.out.println("Retrieved: " + onepair.getKey() + " = " + onepair.getValue());
 
-			try ( Transaction tx = graphDb.beginTx() )
+			try ( GraphBackend.Tx tx = graph.beginTx() )
 			{
 
 
@@ -320,67 +409,18 @@ public class App
 
 
 
-				Label label;
-				Node firstNode, secondNode, thirdNode;
-				Relationship	relationship = null, relationship2 = null;
-
-
-				// first node
-				query =  "match (n {id: "+onepair.getKey().sender.name + "}) return n";
-				System.out.println(query);
-				result =  engine.execute( query );
-			
-				if (result.columnAs("n").hasNext())
-				{
-					System.out.println("Node " + onepair.getKey().sender.name + " already exist");
-					firstNode =  (Node) result.columnAs("n").next();
-				}
-				else
-				{
-					firstNode = graphDb.createNode();
-					System.out.println("Node " + onepair.getKey().sender.name + " is generated");
-					firstNode.setProperty( "id", onepair.getKey().sender.name );
-				}
+				int firstNode, secondNode, thirdNode;
 
-				// second node
-				query =  "match (n {id: "+ onepair.getKey().receiver.name + "}) return n";
-				System.out.println(query);
-				result = engine.execute( query );
-				if (result.columnAs("n").hasNext())
-				{
-					System.out.println("Node " + onepair.getKey().receiver.name + " already exist");
-					secondNode =  (Node) result.columnAs("n").next();
-				}
-				else
-				{
-					secondNode = graphDb.createNode();
-					System.out.println("Node " + onepair.getKey().receiver.name + " is generated");
-					secondNode.setProperty( "id", onepair.getKey().receiver.name );
-				}
 
-				// relationship
+				// first and second node
+				firstNode = handles.upsert(onepair.getKey().sender);
+				secondNode = handles.upsert(onepair.getKey().receiver);
 
-				query =  "START n=node(*) MATCH n-[rel:SEND]->r  WHERE n.id="+  onepair.getKey().sender.name  +" AND r.id="+  onepair.getKey().receiver.name + " RETURN rel";
-				result = engine.execute(query);
-				
-				// if relationship already exist
-				if (result.columnAs("rel").hasNext())
-				{
+				// relationship, time and amount are not updated for existing edges
+				if (graph.addOrIncrementEdge(firstNode, secondNode, onepair.getKey().amount, onepair.getKey().time, onepair.getKey().name) > 1)
 					System.out.println("Edge " + onepair.getKey().sender.name + " to " +  onepair.getKey().receiver.name + "  already exist");
-					relationship =  (Relationship) result.columnAs("rel").next();
-					relationship.setProperty("weight", Integer.parseInt(relationship.getProperty("weight").toString()) +1);
-					// time and amount are not updated for existing edges 
-				}
 				else
-				{
-					// if relationship(transaction) is new
 					System.out.println("Edge " + onepair.getKey().sender.name + " to " +  onepair.getKey().receiver.name + "  is generated");
-					relationship = firstNode.createRelationshipTo(secondNode, TransactionTypes.SEND);
-					relationship.setProperty("weight", 1);
-					relationship.setProperty("amount", onepair.getKey().amount);
-					relationship.setProperty("time", onepair.getKey().time);
-					relationship.setProperty("id", onepair.getKey().name); // set the id as the name of the tranx
-				}
 
 
 				if (!demo)
@@ -388,41 +428,14 @@ public class App
 
 
 					// third node
-					query =  "match (n {id: "+ onepair.getValue().receiver.name + "}) return n";
-					result = engine.execute( query );
-					System.out.println(query);
-					if (result.columnAs("n").hasNext())
-					{
-						System.out.println("Node " + onepair.getValue().receiver.name + " already exist");
-						thirdNode =  (Node) result.columnAs("n").next();
-					}
-					else
-					{
-						thirdNode = graphDb.createNode();
-						System.out.println("Node " + onepair.getValue().receiver.name + " is generated");
-						thirdNode.setProperty( "id", onepair.getValue().receiver.name );
-					}
+					thirdNode = handles.upsert(onepair.getValue().receiver);
 
 
 					// relationship
-					query =  "START n=node(*) MATCH n-[rel:SEND]->r  WHERE n.id="+  onepair.getKey().receiver.name  +" AND r.id="+  onepair.getValue().receiver.name + " RETURN rel";
-					result = engine.execute(query);
-					if (result.columnAs("rel").hasNext())
-					{
+					if (graph.addOrIncrementEdge(secondNode, thirdNode, onepair.getValue().amount, onepair.getValue().time, onepair.getValue().name) > 1)
 						System.out.println("Edge " + onepair.getKey().receiver.name + " to " +  onepair.getValue().receiver.name + " already exists");
-						relationship2 =  (Relationship) result.columnAs("rel").next();
-						relationship2.setProperty("weight", Integer.parseInt(relationship2.getProperty("weight").toString()) +1);
-
-					}
 					else
-					{
 						System.out.println("Edge " + onepair.getKey().receiver.name + " to " +  onepair.getValue().receiver.name + "  is generated");
-						relationship2 = secondNode.createRelationshipTo(thirdNode, TransactionTypes.SEND);
-						relationship2.setProperty("weight", 1);
-						relationship2.setProperty("amount", onepair.getValue().amount);
-						relationship2.setProperty("time", onepair.getValue().time);
-						relationship2.setProperty("id", onepair.getValue().name);
-					}
 				}
 
 
@@ -433,6 +446,7 @@ public class App
 			{
 				System.out.println("ERROR with adding to db..");
 				e.printStackTrace();
+				graphComplete = false;
 				break;
 			}
 			finally 
@@ -443,6 +457,27 @@ public class App
 
 			//	   break;
 		}
+		
+		if (bulkLoadGraph && !inMemoryGraph && watermark == 0)
+		{
+			System.out.println("Bulk loading " + graph.nodeCount() + " nodes into the Neo4j store...");
+			try {
+				graph = Neo4jGraphBackend.bulkLoad("neo4j-store", (CsrGraphBackend) graph);
+				handles.moveTo(graph);  // the store keeps the handles of the graph
+			}
+			catch (Exception e)
+			{
+				System.out.println("Connection error:  " + e.getLocalizedMessage());
+				return;
+			}
+		}
+
+		
+		if (incrementalGraph && !inMemoryGraph && appendOnlyPairs && graphComplete && transactions.size() > 0)
+		{
+			Neo4jGraphBackend.writeWatermark("neo4j-store", transactions.size(), transactions.id(transactions.size() - 1), matchingParameters);
+			((Neo4jGraphBackend) graph).saveNodes("neo4j-store", transactions.size());  // the next run reads the weights instead of every edge
+		}
 
 		double time2_2 =  System.currentTimeMillis();
 
@@ -462,103 +497,61 @@ public class App
 		
 		// Requirement: only one edge between each node (each edge has a weight) 
 		System.out.println("----------------------- step 3 \n Calculating balance score (node weights)...");
-		HashMap<Node, Double> Bs = new HashMap<Node, Double>();
-		ArrayList<Node> BsArray = new ArrayList<Node>();
+		ArrayList<Integer> BsArray = new ArrayList<Integer>();
 		double time3_1 =  System.currentTimeMillis();
 		Integer graphNodesQuantity = 0;
 		
-		try ( Transaction tx = graphDb.beginTx() )	
+		try ( GraphBackend.Tx tx = graph.beginTx() )	
 		{
 
+			// one pass over the weight arrays kept by the graph 
+			NodeWeights weights = graph.weights();
+			double[] balanceScores = weights.balanceScores(graph.nodeCount());
+			
 			// get all nodes
-			Iterator<Node> allNodes =  GOp.getAllNodes().iterator();
-
-			while (allNodes.hasNext()) {
+			for (int currentNode = 0; currentNode < graph.nodeCount(); currentNode++) {
 				graphNodesQuantity++;
-				Node currentNode = (Node) allNodes.next();
-				Iterator<Relationship> outboundRel = currentNode.getRelationships(Direction.OUTGOING).iterator();  // get outbound edges
-				Iterator<Relationship> inboundRel = currentNode.getRelationships(Direction.INCOMING).iterator();   // get inbound edges
-
-				System.out.println("Observing node " + currentNode.getProperty("id")); 
-
-				Double B = 0.0;
-				Integer sumOfOutgoing = 0;
-				Integer sumOfIncoming = 0;	
-				int outboundRelCount = 0, inboundRelCount = 0;
-
 
-				while (outboundRel.hasNext())
-				{
-					outboundRelCount+=1;  // compute # of outbound
-					
-					//		System.out.println(outboundRel.next().getProperty("id"));
-					sumOfOutgoing += Integer.parseInt(outboundRel.next().getProperty("weight").toString());  // compute total weight of outgoing edges
-					//	System.out.println(">");
-					//	outboundRel.next();
-					//	sumOfOutgoing += 1;
-				}
-
-				//System.out.println("Inbound edges: ");
-				while (inboundRel.hasNext())
-				{
-					inboundRelCount+=1; // compute # of inbound
-					//	System.out.println(inboundRel.next().getProperty("id"));
-					sumOfIncoming += Integer.parseInt(inboundRel.next().getProperty("weight").toString()); // compute total weight of incoming edges
-					//inboundRel.next();
-					//	sumOfIncoming += 1;
-					//	System.out.println("<");
-				}
+				Integer sumOfOutgoing = weights.sumOfOutgoing[currentNode];
+				Integer sumOfIncoming = weights.sumOfIncoming[currentNode];	
+				Double B = balanceScores[currentNode];
 				
-				System.out.println("Node: " + currentNode.getProperty("id") + " #inbound " + inboundRelCount + " #outbound " + outboundRelCount);
+				System.out.println("Node: " + graph.nodeId(currentNode) + " #inbound " + weights.inDegree[currentNode] + " #outbound " + weights.outDegree[currentNode]);
 				System.out.println("sumofincoming " + sumOfIncoming +  " sumofoutgoing " + sumOfOutgoing);
-				
-				// basic version: only the first part of the formula
-				//B = (2 * sumOfOutgoing * sumOfIncoming) / (Math.pow(sumOfOutgoing,2) + Math.pow(sumOfIncoming, 2));
-				
-				// advanced version: both parts of formula
-				B = (2 * sumOfOutgoing * sumOfIncoming) / (Math.pow(sumOfOutgoing,2) + Math.pow(sumOfIncoming, 2));   // compare the difference between the weights. more diff -> higher value 
-				B = B * Math.log10(Math.min(sumOfOutgoing, sumOfIncoming));  // put more emphasis on nodes with higher weight
-				
 				System.out.println(" > Final B value " + B);
+				
 				if (demo || B >= 0)
 				{
-					currentNode.setProperty("B", B);
-					currentNode.setProperty("sumOfIncoming", sumOfIncoming);
-					currentNode.setProperty("sumOfOutgoing", sumOfOutgoing);
-					currentNode.setProperty("B-with-second-term", B * Math.log10(Math.min(sumOfOutgoing, sumOfIncoming)));
-					
-					Bs.put(currentNode, B);
+					if (writeBalanceScores)
+					{
+						graph.setProperty(currentNode, "B", B);
+						graph.setProperty(currentNode, "sumOfIncoming", sumOfIncoming);
+						graph.setProperty(currentNode, "sumOfOutgoing", sumOfOutgoing);
+						graph.setProperty(currentNode, "B-with-second-term", B * Math.log10(Math.min(sumOfOutgoing, sumOfIncoming)));
+					}
 				}
 
 			}
 
 
-			// sort
-			Bs = (HashMap<Node, Double>) Util.sortMapByValue(Bs);
+			// select the nodes with high enough B value, only they are sorted
+			int[] highRiskNodes = Util.selectTopK(balanceScores, graph.nodeCount(), degreeConstant, maxBalanceCandidates);
 
 
 			System.out.println("Sorted Bs: (High degree nodes) (higher than/equal to: " + degreeConstant +  " )");
 			tx.success();
-			Iterator BsI = Bs.entrySet().iterator();
-
-
-		
-			while (BsI.hasNext()) {
-				Map.Entry pairs1 = (Map.Entry) BsI.next();
-				Node  BNode = (Node) pairs1.getKey();
-				
-				// if Node has high enough B value, add it to the final list
-				if ((Double) pairs1.getValue() >= degreeConstant)
-					BsArray.add(BNode);
-				
-				System.out.println("Node: " + BNode.getProperty("id") + ": " + pairs1.getValue());
-
-				BsI.remove(); // avoids a ConcurrentModificationException
-			}
+			
+			for (int BNode : highRiskNodes)
+				BsArray.add(BNode);
+			
+			// every scored node, or only the selected ones
+			int[] printedNodes = printBalanceScores ? Util.selectTopK(balanceScores, graph.nodeCount(), demo ? Double.NEGATIVE_INFINITY : 0, 0) : highRiskNodes;
+			for (int BNode : printedNodes)
+				System.out.println("Node: " + graph.nodeId(BNode) + ": " + balanceScores[BNode]);
 
 			System.out.println("High risk nodes in horizontal form: ");
-			for (Node n : BsArray)
-				System.out.print(n.getProperty("id") +" ");
+			for (Integer n : BsArray)
+				System.out.print(graph.nodeId(n) +" ");
 			System.out.println("");
 
 			
@@ -577,197 +570,19 @@ public class App
 	
 		if (experimentActive)
 		{
-				
-				System.out.println("----------------------- step 3.5 ");
-				
-				// return intermediates in: X -> .. i.. -> Y 
-				// query =  "START n=node(*) MATCH p=()-->i-->() WHERE has(i.B)  RETURN DISTINCT filter(x IN NODES(p) WHERE exists(x.B)) as o";
-				//query =  "START n=node(*)  WHERE n.aa='bb' RETURN n ";
-				//System.out.println(row);
-				Iterator<Iterable<Node>> resultingRows = null;
-				Iterator<Node> resultingSenders = null;
-				Iterator<Node> resultingReceivers = null;
-				
-				// this is to store the sender and receivers seen
-				HashMap<Pair<Node,Node> , Node> endPoints = new HashMap<Pair<Node,Node> , Node>();
-				
-				try(Transaction tx = graphDb.beginTx())
-				{	
-					//query = "MATCH p=(n)-[:SEND*]->(m) WHERE NOT ( ()-[:SEND]->(n) OR (m)-[:SEND]->() ) RETURN NODES(p)[1..-1] AS middleNodes";
-					query = "MATCH p=(n)-[:SEND*]->(m) WHERE NOT ( ()-[:SEND]->(n) OR (m)-[:SEND]->() ) RETURN NODES(p)[1..-1] AS middleNodes, NODES(p)[0] AS sender, NODES(p)[-1] as receiver";
-					
-					result = engine.execute(query);
-					
-//					resultingRows =  result.columnAs("middleNodes");
-//					resultingSenders =  result.columnAs("sender");
-//					resultingReceivers =  result.columnAs("receiver");
-//				
-					
-				
-			//	HashSet<String> seenNodesNames = new HashSet<String>();
-					
-//					while (resultingSenders.hasNext())
-//					{
-//						Node sender = (Node) resultingSenders.next();	
-//						System.out.println(">" + sender.getProperty("id"));
-//						Node receiver = (Node) resultingReceivers.next();	
-//						System.out.println(receiver.getProperty("id"));
-//					}	
-					
-					
-
-				int idC = 0;
-				int idC2 = 0;
-				
-				// for every set 
-				//  while (resultingRows.hasNext())  // used when there is only one result column
-				for (Map<String, Object> row : result) 
-				{
-					
-					    System.out.println("---- New row of nodes...");		   
-						Iterable<Node> intermediates = (Iterable<Node>) row.get("middleNodes");
-						
-						// obtain sender and receiver nodes for this row
-						Node sender = (Node) row.get("sender");
-						Node receiver = (Node)  row.get("receiver");
-						
-						
-							 // compute the number of nodes in one row
-							 int sizeOfRow=0;
-							 int indexOfRow=0;
-							 
-							 for (Node n : intermediates) {
-								 if (n.hasProperty("sumOfIncoming"))  // even though the query only returns the intermediates, we are again checking for a property specific to intermediates
-									 sizeOfRow++;
-							 }
-						
-							  System.out.println("Obtained a row of intermediates with length " + sizeOfRow + " sender:" + sender.getProperty("id") + " receiver:" + receiver.getProperty("id"));
-								
-							 // if the row only consist of 1 node.. ex: S -> I -> R, then dont add the shared nodes as Clustering algorithm will pick up this node anyways
-							 if (sizeOfRow > 1)
-							 {
-								
-					 
-								// if sender and receiver hasnt been seen before, create a new node
-								// otherwise extract the same shared node from a map
-									
-								 Pair<Node,Node> thisEndPoint = new ImmutablePair<Node, Node>(sender, receiver);
-								 
-								 Node sharedNode = null;
-								 if (endPoints.containsKey(thisEndPoint))
-								 {
-									 System.out.println("The shared point already exist");
-									 sharedNode = endPoints.get(thisEndPoint);
-								 }
-								 else 
-								 {
-									 System.out.println("Creating new shared point");
-									 sharedNode = graphDb.createNode();
-									 endPoints.put(thisEndPoint, sharedNode);
-										
-									 // add label to node to distinguish it from other nodes. 
-										Label SharedLabel = DynamicLabel.label("SHARED");
-										sharedNode.addLabel(SharedLabel);
-										sharedNode.setProperty("type", "sharedNode");
-										idC++;
-										sharedNode.setProperty("id", 1000000000000L+idC);
-										
-								 }
-								 
-
-								
-								// reset relationship index counter
-								idC2 = 0;
-														 
-							// every node in the row
-							 for (Node n : intermediates) {
-								 
-								 	// extra check 
-									if (n.hasProperty("sumOfIncoming"))
-									{
-									
-									
-						                //System.out.println(n.getProperty("id"));
-		//							 if (seenNodesNames.contains(n.getProperty("id").toString())) 
-		//								 continue;
-		//							 
-		//							 	seenNodesNames.add(n.getProperty("id").toString());
-									 
-									   // set the weight value for the edges. set the weight to outgoing unless its the last node of the list.
-										indexOfRow++;	
-										Integer weight = 0;
-										 if (n.hasProperty("sumOfOutgoing"))
-										    weight = (Integer) n.getProperty("sumOfOutgoing");
-										 
-										 if (indexOfRow == sizeOfRow)
-										 {
-											if (n.hasProperty("sumOfIncoming"))
-												 weight = (Integer) n.getProperty("sumOfIncoming");
-										 }
-										 
-									 
-						                // create a relationship between new node and the existing nodes
-						                Relationship sharedR = sharedNode.createRelationshipTo(n, TransactionTypes.SEND);
-						              
-										sharedR.setProperty("type", "sharedRelationship");
-										idC2++;
-										sharedR.setProperty("id", 1000000000+idC+idC2);
-										sharedR.setProperty("weight", weight); 
-										
-										Relationship sharedR2= n.createRelationshipTo(sharedNode, TransactionTypes.SEND);
-										sharedR2.setProperty("type", "sharedRelationship");
-										idC2++;
-										sharedR2.setProperty("id", 1000000000+idC+idC2+1);
-										sharedR2.setProperty("weight", weight); 
-										System.out.println("Creating a relationship between " + sharedNode.getProperty("id") + " to  " + n.getProperty("id") );
-										System.out.println("Creating a relationship between " + n.getProperty("id") + " to  " + sharedNode.getProperty("id") );
-									
-										System.out.println("Created/reused shared node " +  sharedNode.getProperty("id") + 
-												" with relationships " + sharedR.getProperty("id") + " from/to " + n.getProperty("id") + " with weight " + weight +  " .Degree of shared node: " + sharedNode.getDegree());								
-										
-								 	} // if its not an I node
-									else
-									{
-										System.out.println("Ignored a node because its not an I node ");
-										
-										
-									}
-							 } //loop 
-							 tx.success();
-							
-						 } // if there is only 1 node in row
-						 else
-						 {
-								System.out.println("Ignored a row of nodes, because there is only one node in the row ");						
-								
-						 }
-							 
-				}  // while
-				
-				}   // tx 
-						
-					
-//						 <Node> iNodes = (Iterator<Node>) row.nodes(); 
-//						Iterator<Node> iNodes  = resultingNodes;
-//						
-						
-//						Node sharedNode = graphDb.createNode();
-//						sharedNode.setProperty("type", "sharedNode");
-//						i++;
-//						sharedNode.setProperty("id", 10000+idC);
-//						idC2 = 0;
-//						while (iNodes.hasNext())
-//						{
-//							Relationship sharedR = sharedNode.createRelationshipTo(iNodes.next(), TransactionTypes.SEND);
-//							sharedR.setProperty("type", "sharedRelationship");
-//							idC2++;
-//							sharedR.setProperty("id", 1000000000+idC+idC2);
-//							System.out.println("Created shared node " +  sharedNode.getProperty("id") + 
-//									" with relationship " + sharedR.getProperty("id"));
-//							
-//						} 
-							
-				
+			System.out.println("----------------------- step 3.5 ");
+			
+			// intermediates of the paths X -> .. i.. -> Y from a sender to a receiver, bounded by maxSharedPathLength and maxSharedPaths
+			SharedNodes sharedNodes = new SharedNodes(maxSharedPathLength, maxSharedPaths);
+			sharedNodes.verbose = true;
+			try (GraphBackend.Tx tx = graph.beginTx())
+			{
+				sharedNodes.build(graph);
+				tx.success();
+			}
+			
+			System.out.println("Paths: " + sharedNodes.paths + (sharedNodes.truncated ? " (stopped at maxSharedPaths)" : "") 
+					+ " shared nodes: " + sharedNodes.sharedNodes + " shared edge pairs: " + sharedNodes.sharedEdges);
 		}
 				
 		
@@ -785,210 +600,64 @@ public class App
 		System.out.println("----------------------- step 4 \n Calculating Similar Nodes (SHRINK)...");
 		System.out.println("Compare all combinations...");
 
-		HashMap <ArrayList<Node>, Double> DensePairs = new HashMap <ArrayList<Node>, Double>();// stores pairs and their density
+		final HashMap <ArrayList<Integer>, Double> DensePairs = new HashMap <ArrayList<Integer>, Double>();// stores pairs and their density
 		double time4_1 =  System.currentTimeMillis();
-		HashMap<String, Integer> PreviousNodeU = new HashMap<String, Integer>();
-		Double[][] similarityMatrix = new Double[BsArray.size()][BsArray.size()];
+		final SparseSimilarityMatrix similarityMatrix = new SparseSimilarityMatrix(BsArray.size());  // non-zero similarities of the upper triangle
+		SimilarityEngine similarity;
+		MinHashLsh lsh = new MinHashLsh(lshBands, lshRows, 1);
+		lsh.maxBucketSize = lshMaxBucketSize;
 		
 		
-		try ( Transaction tx = graphDb.beginTx() )	
+		try ( GraphBackend.Tx tx = graph.beginTx() )	
 		{
 
+			// weighted adjacency of the candidates, read from the graph once
+			similarity = new SimilarityEngine(graph, BsArray);
+			similarity.parallelism = similarityParallelism;
+			if (pruneSimilarity)
+				similarity.minSimilarity = densePairConstant;
+			final ArrayList<Integer> candidates = BsArray;
+			final GraphBackend g = graph;
 			
-			// compare every node with every other node. 
-			for (i=0; i < BsArray.size(); i++)
+			// compare every node with every other node, each pair once (i < j)
+			// pairs without common neighbours on both sides have similarity 0, they are only needed if 0 is dense
+			SimilarityEngine.PairVisitor visitor = new SimilarityEngine.PairVisitor()
 			{
-				
-				Node u = BsArray.get(i);
-				
-				for ( j=0; j< BsArray.size(); j++)
+				public void visit(int i, int j, double finalResult)
 				{
-
-					// if comparing a node with itself  
-					if (i==j) continue;  // add result
-
-
+					// add values to a matrix for loggin
+					if (finalResult != 0.0)
+						similarityMatrix.add(i, j, finalResult);
 					
-					Node v = BsArray.get(j);
-
-				
-					// if nodes seen before
-					// todo: use the value of the previousnodeU to check for item i? ex. key=i&val=j or key=j&val=i
-					if (PreviousNodeU.containsKey(i + " " + j) || PreviousNodeU.containsKey(j + " " + i))
+					if (finalResult >= densePairConstant)  // threshold may be 0 or .2 or something higher
 					{
-							//System.out.println("Found the same key j");
-				
-							//System.out.println("Found the same pair, skipping");
-							//System.out.println("existing pair " + u.getProperty("id").toString() + " and " +  v.getProperty("id").toString());
-							continue;		
-					}
-				
-					// store the pair so that they are not compared again	
-					PreviousNodeU.put(i + " " + j, 1);
-				
-					//System.out.println("New pair " + u.getProperty("id").toString() + " and " +  v.getProperty("id").toString());
-					//System.out.println(PreviousNodeU);
-					
-					System.out.println();
-					System.out.println("Considering u " + u.getProperty("id").toString() + " | v " + v.getProperty("id").toString());
-
-
-					
-					// u item
-//					ArrayList<Node> uEndNodes = new ArrayList<Node>();
-//					ArrayList<Node> uStartNodes = new ArrayList<Node>();
-//
-//					// v item
-//					ArrayList<Node> vEndNodes = new ArrayList<Node>();
-//					ArrayList<Node> vStartNodes = new ArrayList<Node>();
-			
-
-
-					Double termOne = -1.0;
-					Double termTwo = -1.0;
-					
-			
-				// repeat twice for term one and two.
-				// round one is node from incoming edges, round two is node at the end of outgoing edges
-				for (int ii=1; ii<=2;ii++){
-					
-					// nominator (common nodes)
-					if (ii == 1)
-						query = "MATCH (u { id: " +  u.getProperty("id").toString() +"})<-[a:SEND]-(x)-[b:SEND]->(v {id: " + v.getProperty("id").toString() +"}) RETURN a,b";  //incoming 
-					else
-						query = "MATCH (u { id: " +  u.getProperty("id").toString() +"})-[a:SEND]->(x)<-[b:SEND]-(v {id: " + v.getProperty("id").toString() +"}) RETURN a,b";  //outgoing
-						
-					
-					System.out.println("Query " + query);
-					
-					result = engine.execute( query );
-				
-					Double nominator = 0.0;
-							
-					Relationship edgeXtoU = null;
-					Relationship edgeXtoV = null;
-        	    		
-    	        	 for ( Map<String, Object> row : result)
-    	        	 {
-    	        	     for ( Entry<String, Object> column : row.entrySet() )
-    	        	     {
-    	        	    	  String rows = column.getKey() + ": " + column.getValue() + "; ";
-    	        	    	  
-    	        	    	  if (column.getKey().compareTo("a") == 0)
-    	        	    		 edgeXtoU =  (Relationship) column.getValue();
-    	        	    	  else
-    	        	    		 edgeXtoV =  (Relationship) column.getValue();
-    	        	     }
-    	        	     
-    	        	     
-    	        	 	nominator += Double.parseDouble(edgeXtoU.getProperty("weight").toString()) * Double.parseDouble(edgeXtoV.getProperty("weight").toString());
-					//	nominator++; // w(u,u) = 1
-    	        	 	System.out.println("edge " + edgeXtoU.getProperty("id") + " and " + edgeXtoV.getProperty("id") + ". nominator so far: " + nominator);						
-    	        	 }
-					
-					System.out.println("final nominator " + nominator);
-
-					// denominator
-					// part 1 of denominator
-					if (ii == 1)
-						query = "MATCH (u { id: " +  u.getProperty("id").toString() +"} )<-[a:SEND]-() RETURN a";  //incoming
-					else
-						query = "MATCH (u { id: " +  u.getProperty("id").toString() +"} )-[a:SEND]->() RETURN a";  //outgoing
+						System.out.println("Similarity value between node " + g.nodeId(candidates.get(i)) + " and " + g.nodeId(candidates.get(j)) + " is " + finalResult);
 						
-					
-					System.out.println("Query " + query);
-					result = engine.execute( query );
-					Double sumOfSquaredIncomingEdgesForU = 0.0;
-					int edgeXtoUCount = 0;
-					if (result.columnAs("a").hasNext())
-					{
-						while (result.columnAs("a").hasNext())
-						{
-							edgeXtoU =  (Relationship) result.columnAs("a").next();
-							edgeXtoUCount++;
-							sumOfSquaredIncomingEdgesForU += Math.pow(Double.parseDouble(edgeXtoU.getProperty("weight").toString()), 2.0);
-							//System.out.println("edge " + edgeXtoU.getProperty("id") + " has weight " + edgeXtoU.getProperty("weight").toString());
-						}
-					}
-
-					sumOfSquaredIncomingEdgesForU++;   // w(u,u) = 1, as part of spec
-					System.out.println(edgeXtoUCount + " total squared weight (+1 per spec): " + sumOfSquaredIncomingEdgesForU);
-					
-					// part 2 of denominator
-					if (ii == 1)
-						query = "MATCH (v { id: " +  v.getProperty("id").toString() +"} )<-[a:SEND]-() RETURN a"; //incoming
-					else
-						query = "MATCH (v { id: " +  v.getProperty("id").toString() +"} )-[a:SEND]->() RETURN a"; //outgoing
-					
-					
-					System.out.println("Query " + query);
-					result = engine.execute( query );
-					Double sumOfSquaredIncomingEdgesForV = 0.0;
-					int edgeXtoVCount = 0;
-					if (result.columnAs("a").hasNext())
-					{
-						while (result.columnAs("a").hasNext())
-						{
-							 edgeXtoV =  (Relationship) result.columnAs("a").next();
-							 edgeXtoVCount++;
-							 sumOfSquaredIncomingEdgesForV += Math.pow(Double.parseDouble(edgeXtoV.getProperty("weight").toString()), 2);
-						//	System.out.println("edge " + edgeXtoV.getProperty("id") + " has weight " + edgeXtoV.getProperty("weight").toString());
-						}
-					}
-					//TODO: should the following line be here??
-					sumOfSquaredIncomingEdgesForV++;   // w(u,u) = 1, as part of spec
-					System.out.println(edgeXtoVCount + " total squared weight (+1 per spec):  " + sumOfSquaredIncomingEdgesForV);
-					
-					
-					
-
-					if (ii == 1)
-					{
-						// computing the final value of first term 
-						termOne = nominator / (Math.sqrt(sumOfSquaredIncomingEdgesForU) * Math.sqrt(sumOfSquaredIncomingEdgesForV));
-						if (termOne == null) // take care of NaN and division by 0
-							termOne = 0.0;
-						System.out.println(termOne + " = " + nominator + " / " + "sqrt(" + sumOfSquaredIncomingEdgesForU + ") * sqrt("+sumOfSquaredIncomingEdgesForV+")");
-
+						ArrayList<Integer> denseNodes = new ArrayList<Integer>(); 
+						denseNodes.add(candidates.get(i));
+						denseNodes.add(candidates.get(j));
+						DensePairs.put(denseNodes, finalResult);
 					}
-					else
-					{
-						// computing the final value of second term 
-						termTwo = nominator / (Math.sqrt(sumOfSquaredIncomingEdgesForU) * Math.sqrt(sumOfSquaredIncomingEdgesForV));
-						if (termTwo == null) // take care of NaN and division by 0
-							termTwo = 0.0;
-						System.out.println(termTwo + " = " + nominator + " / " + "sqrt(" + sumOfSquaredIncomingEdgesForU + ") * sqrt("+sumOfSquaredIncomingEdgesForV+")");
-					}
-
 				}
-				
-
-				Double finalResult = termOne * termTwo;
-
-				System.out.println("Similarity value between node u and v is " + finalResult);
-				
-				
-				// add values to a matrix for loggin
-				similarityMatrix[i][j] = finalResult;
-				
-				
-				if (finalResult >= densePairConstant)  // threshold may be 0 or .2 or something higher
-				{
-					ArrayList<Node> denseNodes = new ArrayList<Node>(); 
-					denseNodes.add(u);
-					denseNodes.add(v);
-					DensePairs.put(denseNodes, finalResult);
-				}
-
+			};
+			long[] proposed = null;
+			if (approximateSimilarity)
+			{
+				// MinHash/LSH proposes the pairs, they are scored exactly
+				proposed = lsh.propose(similarity);
+				System.out.println("MinHash/LSH proposed " + proposed.length + " pairs, skipped " + lsh.skippedBuckets + " buckets above lshMaxBucketSize with " + lsh.skippedPairs + " pairs");
 			}
-
-		}
+			scorePairs(similarity, proposed, visitor);
+			System.out.println("Scored " + similarity.scoredPairs + " of " + (long) BsArray.size() * (BsArray.size() - 1) / 2 + " pairs");
+			if (pruneSimilarity)
+				System.out.println("Pruned " + similarity.prunedPairs + " pairs and " + similarity.prunedRows + " nodes below densePairConstant");
+			
 //			System.out.printf("%1s  %-7s   %-7s   %-6s   %-6s%n", "n", "result1", "result2", "time1", "time2");
 //			System.out.printf("%1d  %7.2f   %7.1f   %4dms   %4dms%n", 5, 1000F, 20000F, 1000, 1250);
 //			System.out.printf("%1d  %7.2f   %7.1f   %4dms   %4dms%n", 6, 300F, 700F, 200, 950);
 //			
-		// draw a matrix
-		if (!pairs.isEmpty())
+		// draw a matrix, streamed from the sparse entries
+		if (graph.nodeCount() > 0 && BsArray.size() <= maxPrintedMatrixSize)
 		{	
 			System.out.println("----");
 			System.out.print("  ");
@@ -996,39 +665,39 @@ public class App
 			for (i=0;i<BsArray.size();i++)
 			{
 	
-				System.out.printf("%-7d", BsArray.get(i).getProperty("id"));
+				System.out.printf("%-7d", graph.nodeId(BsArray.get(i)));
 			}
 
 			System.out.println("");
-			NumberFormat formatter = new DecimalFormat("#0.00");
 			
-			    int rows = similarityMatrix.length;
-		        int columns = similarityMatrix[0].length;
-		        String str = "|\t";
-		        Double num = 0.0;
-		        
-		        for( i=0;i<rows;i++){
-		        	System.out.printf("%-7d", BsArray.get(i).getProperty("id"));
-		        	//System.out.print(BsArray.get(i).getProperty("id") + "\t");
-		            for( j=0;j<columns;j++){
-		            	if (similarityMatrix[i][j]!=null)
-		            	{ num = similarityMatrix[i][j]; //formatter.format(similarityMatrix[i][j]);
-		            		System.out.printf("%7.2f", num);}
-		            	else
+		        int entry = 0;
+		        for( i=0;i<similarityMatrix.size();i++){
+		        	System.out.printf("%-7d", graph.nodeId(BsArray.get(i)));
+		            for( j=0;j<similarityMatrix.size();j++){
+		            	if (j > i)
 		            	{
-		            		num = -1.0;
-		            		System.out.printf("%7s", "N/A");
+		            		// pairs that were not added have similarity 0
+		            		double num = 0.0;
+		            		if (entry < similarityMatrix.entries() && similarityMatrix.row(entry) == i && similarityMatrix.column(entry) == j)
+		            			num = similarityMatrix.value(entry++);
+		            		System.out.printf("%7.2f", num);
 		            	}
-		            	
-		            	
+		            	else
+		            		System.out.printf("%7s", "N/A");
 		            }
 		            System.out.println("");
-		          
-		          
 		        }
 		        
 			System.out.println("----");
-			//System.out.println(PreviousNodeU);
+		}
+		else if (graph.nodeCount() > 0)
+		{
+			// too many nodes for a grid, only the non-zero pairs
+			System.out.println("----");
+			for (int entry = 0; entry < similarityMatrix.entries(); entry++)
+				System.out.printf("%-7d %-7d %7.2f%n", graph.nodeId(BsArray.get(similarityMatrix.row(entry))), 
+						graph.nodeId(BsArray.get(similarityMatrix.column(entry))), similarityMatrix.value(entry));
+			System.out.println("----");
 		}
 		
 			tx.success();
@@ -1036,6 +705,16 @@ public class App
 		
 		double time4_2 =  System.currentTimeMillis();
 		
+		// scoring again with fewer threads for the speedup
+		String similarityScaling = "";
+		if (similaritySpeedup)
+			similarityScaling = similarityScaling(similarity, lsh, similarityParallelism);
+		
+		// the exact dense pairs, for the recall of MinHash/LSH
+		String similarityRecall = "";
+		if (approximateSimilarity && lshRecall && densePairConstant > 0)
+			similarityRecall = similarityRecall(similarity, lsh, DensePairs.size());
+		
 
 		
 		// sort
@@ -1045,7 +724,7 @@ public class App
 
 		// ***********************************
 		// step 5: identity groups (from dense pairs)
-		// In the first step the DensePairs with the format: {List<Node>, Double}... is converted to a list of sets: {Set<Node>,...}
+		// In the first step the DensePairs with the format: {List<Integer>, Double}... is converted to a list of sets: {Set<Integer>,...}
 
 		System.out.println("----------------------- step 5 \n Identity groups (from dense pairs)...");
 	
@@ -1053,22 +732,22 @@ public class App
 		System.out.println("Number of dense pairs to look (i.e. pairs with similarity above threshold " + densePairConstant  +  " : " + DensePairs.size() + ")");	
 		
 		Iterator DensePairsit = DensePairs.entrySet().iterator();
-		ArrayList <ArrayList<Node>> DensePairsArray = new ArrayList <ArrayList<Node>>();// stores pairs (no similarity value)
+		ArrayList <ArrayList<Integer>> DensePairsArray = new ArrayList <ArrayList<Integer>>();// stores pairs (no similarity value)
 		
 		double time5_1 =  System.currentTimeMillis();
-		Transaction tx = graphDb.beginTx();
+		GraphBackend.Tx tx = graph.beginTx();
 		try 	
 		{
 				while (DensePairsit.hasNext()) {
 			        Map.Entry DensePairsitItem = (Map.Entry)DensePairsit.next();  // get one { <pair>, <similarity> }
 			        
 			        System.out.println( DensePairsitItem.getKey() 
-			        		+ " with ids " + ((ArrayList<Node>) DensePairsitItem.getKey()).get(0).getProperty("id") + " and " + ((ArrayList<Node>) DensePairsitItem.getKey()).get(1).getProperty("id")
+			        		+ " with ids " + graph.nodeId(((ArrayList<Integer>) DensePairsitItem.getKey()).get(0)) + " and " + graph.nodeId(((ArrayList<Integer>) DensePairsitItem.getKey()).get(1))
 			        		+ " have similarity value " + DensePairsitItem.getValue());   //node1,node2 = similarity 
 			     	
-			        ArrayList<Node> densePairSet = new ArrayList<Node>(); // create a set. each set contains 2 ids (one pair) in the beginning
-			        densePairSet.add(((ArrayList<Node>) DensePairsitItem.getKey()).get(0));  // extract first id
-			        densePairSet.add(((ArrayList<Node>) DensePairsitItem.getKey()).get(1)); // extract second id
+			        ArrayList<Integer> densePairSet = new ArrayList<Integer>(); // create a set. each set contains 2 ids (one pair) in the beginning
+			        densePairSet.add(((ArrayList<Integer>) DensePairsitItem.getKey()).get(0));  // extract first id
+			        densePairSet.add(((ArrayList<Integer>) DensePairsitItem.getKey()).get(1)); // extract second id
 			        DensePairsArray.add(densePairSet);     // put this set into collection of pairs
 			        DensePairsit.remove(); // avoids a ConcurrentModificationException
 			    }
@@ -1082,107 +761,59 @@ public class App
 	
 		 
 		// at this point we have an array of sets (DensePairsArray). each set has a pair of nodes that are dense. we now combine these sets to to ML groups
-		/*
-
-			For each pair d in D
-				for each item i in d
-					for each unprocessed pair d’ in D (D- d)
-						if i is in d’
-							merge d’ into d
-							remove d’ from D
-		*/
-	
-		Transaction tx2 = graphDb.beginTx();
-		try	
-		{
-		//ArrayList <ArrayList<Node>> MoneyLaunderingGroups = new ArrayList <ArrayList<Node>>();// stores pairs and their density
-			
-		int totalPairs =  DensePairsArray.size();
+		// the groups are the connected components of the dense pairs: the two nodes of every pair are joined in disjoint sets
+		// (union-find with path compression and union by rank), which takes near linear time in the number of pairs
+		
 		System.out.println("Starting the pair merging process...");
 		System.out.println(DensePairsArray);
 		
-		//  example DensePairsArray = (1,2)(1,3)(1,4)(2,3)(2,4)(3,4)
-		// i is the index of set
-		for ( i = 0; i <  DensePairsArray.size() ; i++) // For each pair d in D
+		// incremental detection keeps the groups of the previous run with the store and only applies the dense pairs that changed
+		GroupTracker tracker = null;
+		DisjointSets groups = null;
+		ArrayList <ArrayList<Integer>> mlGroups = new ArrayList <ArrayList<Integer>>();
+		try ( GraphBackend.Tx tx2 = graph.beginTx() )
 		{
-			System.out.println("---");
-			// example densepairitem = (1, 2)
-			
-			// j is the item index in one set
-			for (j = 0; j < DensePairsArray.get(i).size(); j++)  // for each item i in d. i = densePairItem, every densePairItem has 2 items 
-			{	
-				// if there are no more sets in the list to review. regular size variable cannot be used as the list shrinks when merging happens
-				if (i == totalPairs) break;  
-				
-				ArrayList<Node> densePairItem = (ArrayList<Node>) DensePairsArray.get(i);  // (1,2)
-			
-				System.out.println("\n Looking at set with first two items of " + densePairItem.get(0).getProperty("id").toString() + " and " +  densePairItem.get(1).getProperty("id").toString() + ", indexes i=" + i + " j="+ j);
-				
-					// for each unprocessed pair d’ in D: (D - d)
-				    // k is the index of unprocessed sets
-			        for (int k = i+1; k <  DensePairsArray.size(); k++)  // limit should be var totalPairs ???
-			        {
-			        	ArrayList<Node> densePairItemCompared = (ArrayList<Node>) DensePairsArray.get(k);  // (1,3) when i=0, k=1 (first try)
-			        	
-			          	System.out.println("looking at pair with index(k)=" + k + " total number of sets: " + DensePairsArray.size());
-			        	System.out.println("comparing node " + densePairItem.get(j).getProperty("id").toString() + " with node " +  densePairItemCompared.get(0).getProperty("id").toString()  + " and " + densePairItemCompared.get(1).getProperty("id").toString());
-			        	//System.out.println(DensePairsArray);
-			        	
-			        	//if item 1 is in d’ :
-			        	if (densePairItem.get(j).getProperty("id").toString().equalsIgnoreCase(densePairItemCompared.get(0).getProperty("id").toString()))
-			        	{
-			        		System.out.println("Item " + densePairItem.get(j).getProperty("id").toString() + " is same as " + densePairItemCompared.get(0).getProperty("id").toString());
-			        		System.out.println("reducing number of pairs..");
-			        		
-			        		
-			        		// if 3 is included in (1,2)
-			        		if (!densePairItem.contains(densePairItemCompared.get(1)))
-			        			densePairItem.add(densePairItemCompared.get(1)); // change (1,2) to (1,2,3)
-			        		
-			        		System.out.println("Removing " + densePairItemCompared);
-			        		DensePairsArray.remove(k);
-			        		k--;  // when an set is removed, another set replaces its position (i.e. k) therefore same k index should be checked
-			        	//	totalPairs--;
-			        	}
-			        	//if item 2 is in d’ :
-			        	else if (densePairItem.get(j).getProperty("id").toString().equalsIgnoreCase(densePairItemCompared.get(1).getProperty("id").toString()))
-			        	{
-			        		System.out.println("Node " + densePairItem.get(j).getProperty("id").toString() + " is same as second term " + densePairItemCompared.get(1).getProperty("id").toString());
-			        		System.out.println("reducing number of pairs..");
-				        	
-			        		// if 1 is included in (1,2). it wont get here on example
-			        		if (!densePairItem.contains(densePairItemCompared.get(0)))
-			        			densePairItem.add(densePairItemCompared.get(0));
-			        		
-			         		System.out.println("Removing " + densePairItemCompared);
-			        		DensePairsArray.remove(k);
-			        		k--;
-			        	//	totalPairs--;
-			        		
-			        	}
-			        	else
-			        		System.out.println("Item " + densePairItem.get(j).getProperty("id").toString() + " is not found in  " + densePairItemCompared);
-		        		
-			        }  // loops D-d (i.e. d'), iterate k
-			
-			        
-			        DensePairsArray.set(i, densePairItem); // overwrite pair with a new group of nodes
-			        
-			        // print out the result after comparing one node with d' and performing the necessary merges
-			        System.out.println("Result of list so far ...");
-			    	System.out.println(DensePairsArray);
-			    	
-			} // iterate j
-			
-			
-		} // iterate i
+			if (incrementalGraph && !inMemoryGraph)
+			{
+				tracker = GroupTracker.load("neo4j-store");
+				ArrayList<long[]> densePairIds = new ArrayList<long[]>();
+				for (ArrayList<Integer> densePairItem : DensePairsArray)
+					densePairIds.add(new long[] { graph.nodeId(densePairItem.get(0)), graph.nodeId(densePairItem.get(1)) });
+				tracker.update(densePairIds);
+				System.out.println(tracker.joined.size() + " accounts joined a group and " + tracker.left.size() + " left every group since the previous run, " + tracker.splitGroups + " groups were split");
+			}
+			else
+			{
+				groups = new DisjointSets(graph.nodeCount());
+				for (ArrayList<Integer> densePairItem : DensePairsArray)
+					groups.union(densePairItem.get(0), densePairItem.get(1));
+			}
 		
+			// groups in the order of their first pair, nodes in the order they first appear in a pair
+			LongIntHashMap groupOfRoot = new LongIntHashMap();
+			boolean[] grouped = new boolean[graph.nodeCount()];
+			for (ArrayList<Integer> densePairItem : DensePairsArray)
+			{
+				for (int node : densePairItem)
+				{
+					if (grouped[node])
+						continue;
+					grouped[node] = true;
+				
+					long root = tracker != null ? tracker.group(graph.nodeId(node)) : groups.find(node);
+					int group = groupOfRoot.get(root, -1);
+					if (group < 0)
+					{
+						group = mlGroups.size();
+						groupOfRoot.put(root, group);
+						mlGroups.add(new ArrayList<Integer>());
+					}
+					mlGroups.get(group).add(node);
+				}
+			}
 			tx2.success();
 		}
-		finally
-		{
-			tx2.close();
-		}
+		DensePairsArray = mlGroups;
 		
 		// final DensePairsArray = (a,b,m,e), (c,d)
 		double time5_2 =  System.currentTimeMillis();
@@ -1190,29 +821,48 @@ public class App
 		
 		// at this point the var DensePairArray has ML groups 
 		// we mark the ML nodes on graph with ML attribute and color 
-		Transaction tx1 = graphDb.beginTx();
+		GraphBackend.Tx tx1 = graph.beginTx();
 		int totalMLAccountsFound = 0;  // used for stats 
 		try
 		{	
 		// at the end DensePairsArray has the list of arrays that cooresponde to ML groups
 		System.out.println("Resulting ML groups are ...");
 		
-		Label MLLabel = DynamicLabel.label("ML");
 		
 		
 		for (i = 0; i< DensePairsArray.size(); i++) {
 			System.out.println("ML Group #" + new Integer(i+1) + ":");
 			
 			for (j = 0; j< DensePairsArray.get(i).size(); j++) {
-				System.out.print(DensePairsArray.get(i).get(j).getProperty("id") + " ");
-				DensePairsArray.get(i).get(j).setProperty("ML", "yes");
-			//	DensePairsArray.get(i).get(j).setProperty("ui.class", "ml");  // for coloring. coloring is achieved through graph styling file now
-				DensePairsArray.get(i).get(j).addLabel(MLLabel);
+				System.out.print(graph.nodeId(DensePairsArray.get(i).get(j)) + " ");
+				if (tracker == null)
+				{
+					graph.setProperty(DensePairsArray.get(i).get(j), "ML", "yes");
+				//	DensePairsArray.get(i).get(j).setProperty("ui.class", "ml");  // for coloring. coloring is achieved through graph styling file now
+					graph.addLabel(DensePairsArray.get(i).get(j), "ML");
+				}
 				totalMLAccountsFound++;
 			}
 			System.out.println();
 		}
 		
+		// the other accounts of the groups are labeled since a previous run
+		if (tracker != null)
+		{
+			for (long account : tracker.joined)
+			{
+				int node = handles.find(account);
+				graph.setProperty(node, "ML", "yes");
+				graph.addLabel(node, "ML");
+			}
+			for (long account : tracker.left)
+			{
+				int node = handles.find(account);
+				graph.removeProperty(node, "ML");
+				graph.removeLabel(node, "ML");
+			}
+		}
+		
 		System.out.println(DensePairsArray);
 		tx1.success();
 		}
@@ -1220,7 +870,12 @@ public class App
 		{
 			tx1.close();
 		}
+		if (tracker != null)
+			tracker.save("neo4j-store");
+		if (graph instanceof Neo4jGraphBackend)
+			((Neo4jGraphBackend) graph).saveShared("neo4j-store");  // shared nodes of step 3.5, the next run deletes them
 		double timeEnd=  System.currentTimeMillis();
+		QueryTimer queryTimer = graph instanceof Neo4jGraphBackend ? ((Neo4jGraphBackend) graph).queryTimer : null;  // latency of the Neo4j queries
 		
 		
 		// MATCH (n) RETURN n
@@ -1229,7 +884,7 @@ public class App
 		// end of algorithm. report result 
 		
 		System.out.println("Report ..");
-		System.out.println("Total number of nodes: " + nodes.size());
+		System.out.println("Total number of nodes: " + nodeCount);
 		System.out.println("Total number of transactions: " + transactions.size());
 
 		System.out.println("Total number of matched transactions: " + pairs.size());
@@ -1237,6 +892,8 @@ public class App
 		// why is DensepairSize bigger than BsArray.size()  .. dense pair is just? because (BsArray * BsArray) - 5 is the total DensepairSize
 		System.out.println("Total number of balanced scored nodes: " + BsArray.size());
 		System.out.println("Total number of dense pairs: " + DensepairSize);
+		if (!similarityRecall.isEmpty())
+			System.out.println(similarityRecall.substring(1));
 		System.out.println("Total number of ML groups: " + DensePairsArray.size());
 
 		System.out.println("ML detection of group rating: " + DensePairsArray.size() + " / " + generationResult[0]);
@@ -1250,6 +907,8 @@ public class App
 		System.out.println("Total time to generate graph (ms): " + (double) (time2_2 - time2_1));
 		System.out.println("Total time to calculate balance score (ms): " + (double) (time3_2 - time3_1));
 		System.out.println("Total time to Similar Nodes (SHRINK) (ms): " + (double) (time4_2 - time4_1));
+		if (!similarityScaling.isEmpty())
+			System.out.println(similarityScaling.substring(1));
 		System.out.println("Total time to identity groups (ms): " + (double) (time5_2 - time5_1));
 		System.out.println("Total time of program with Data generation (ms): " + (double) (timeEnd - timeStart));
 		System.out.println("Total time of program without Data generation (ms): " + (double) (timeEnd - timeStartWithoutGeneration));
@@ -1258,7 +917,7 @@ public class App
 		fw = new FileWriter("output_summary.txt");
 		fw.write("\n------------");
 		fw.write("\nReport ..");
-		fw.write("\nTotal number of nodes: " + nodes.size());
+		fw.write("\nTotal number of nodes: " + nodeCount);
 		fw.write("\nTotal number of transactions: " + transactions.size());
 
 		fw.write("\nTotal number of matched transactions: " + pairs.size());
@@ -1266,6 +925,7 @@ public class App
 		// why is DensepairSize bigger than BsArray.size()  .. dense pair is just? because (BsArray * BsArray) - 5 is the total DensepairSize
 		fw.write("\nTotal number of balanced scored nodes: " + BsArray.size());
 		fw.write("\nTotal number of dense pairs: " + DensepairSize);
+		fw.write(similarityRecall);
 		fw.write("\nTotal number of ML groups: " + DensePairsArray.size());
 
 		fw.write("\nML detection of group rating: " + DensePairsArray.size() + " / " + generationResult[0]);
@@ -1279,18 +939,100 @@ public class App
 		fw.write("\nTotal time to generate graph (ms): " + (double) (time2_2 - time2_1));
 		fw.write("\nTotal time to calculate balance score (ms): " + (double) (time3_2 - time3_1));
 		fw.write("\nTotal time to Similar Nodes (SHRINK) (ms): " + (double) (time4_2 - time4_1));
+		fw.write(similarityScaling);
 		fw.write("\nTotal time to identity groups (ms): " + (double) (time5_2 - time5_1));
 		fw.write("\nTotal time of program with Data generation (ms): " + (double) (timeEnd - timeStart));
 		fw.write("\nTotal time of program without Data generation (ms): " + (double) (timeEnd - timeStartWithoutGeneration));
+		
+		if (queryTimer != null && !queryTimer.isEmpty())
+		{
+			System.out.println("Query latency .." + queryTimer.report());
+			fw.write("\nQuery latency .." + queryTimer.report());
+		}
 	
 		
 		fw.close();
 		
 		
 		System.out.println("Shutdown db");
-		graphDb.shutdown();
+		graph.shutdown();
 	}
 
+	// parameters of step 1 the pairs of the store depend on, kept in its watermark
+	static Properties matchingParameters()
+	{
+		Properties parameters = new Properties();
+		parameters.setProperty("amountThreshold", Double.toString(amountThreshold));
+		parameters.setProperty("allowedAmountDifference", Double.toString(allowedAmountDifference));
+		parameters.setProperty("allowedTimeDifference", Double.toString(allowedTimeDifference));
+		parameters.setProperty("timeVarianceFunction", slidingWindowMatching 
+				? TimeVarianceFunction.forName(timeVarianceFunction, allowedTimeDifference, timeVarianceHalfLife).toString() : "none");
+		return parameters;
+	}
+	
+	// scores the pairs of step 4 and hands each similarity to the visitor: the pairs proposed by MinHash/LSH, 
+	// the pairs with common neighbours, or every pair when densePairConstant is 0
+	static void scorePairs(SimilarityEngine similarity, long[] proposed, SimilarityEngine.PairVisitor visitor)
+	{
+		if (proposed != null)
+			similarity.forEachPair(proposed, visitor);
+		else if (densePairConstant > 0)
+			similarity.forEachCandidatePair(visitor);
+		else
+			similarity.forEachPair(visitor);
+	}
+	
+	// times the path of step 4 (with proposing the pairs for MinHash/LSH) with 1, 2, 4 .. maxThreads threads. 
+	// Only the pairs with common neighbours are scored in parallel, the other paths are timed with one thread
+	static String similarityScaling(SimilarityEngine similarity, MinHashLsh lsh, int maxThreads)
+	{
+		SimilarityEngine.PairVisitor ignore = new SimilarityEngine.PairVisitor()
+		{
+			public void visit(int i, int j, double similarity)
+			{
+			}
+		};
+		
+		int parallelism = similarity.parallelism;
+		if (approximateSimilarity || densePairConstant <= 0)
+			maxThreads = 1;
+		
+		StringBuilder report = new StringBuilder();
+		double oneThread = 0.0;
+		for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads))
+		{
+			similarity.parallelism = threads;
+			long start = System.nanoTime();
+			long[] proposed = approximateSimilarity ? lsh.propose(similarity) : null;
+			scorePairs(similarity, proposed, ignore);
+			double time = (System.nanoTime() - start) / 1e6;
+			if (threads == 1)
+				oneThread = time;
+			report.append(String.format("\nTotal time to Similar Nodes (SHRINK) with %d threads (ms): %.1f, speedup %.2f", threads, time, oneThread / time));
+			
+			if (threads == maxThreads)
+				break;
+		}
+		similarity.parallelism = parallelism;
+		return report.toString();
+	}
+	
+	// dense pairs of the exact step 4 found by the approximate one. Pairs found are scored exactly, so they are all dense pairs of the exact run
+	static String similarityRecall(SimilarityEngine similarity, MinHashLsh lsh, int found)
+	{
+		final long[] dense = new long[1];
+		similarity.forEachCandidatePair(new SimilarityEngine.PairVisitor()
+		{
+			public void visit(int i, int j, double similarity)
+			{
+				if (similarity >= densePairConstant)
+					dense[0]++;
+			}
+		});
+		return String.format("\nMinHash/LSH recall: %d / %d dense pairs (%.3f), %d buckets with %d pairs skipped", found, dense[0], dense[0] == 0 ? 1.0 : (double) found / dense[0], 
+				lsh.skippedBuckets, lsh.skippedPairs);
+	}
+	
 	private static void printMatrix(double[][] m){
 	    try{
 	        int rows = m.length;
@@ -1308,35 +1050,4 @@ public class App
 
 	    }catch(Exception e){System.out.println("Matrix is empty!!");}
 	}
-	
-	private static Map<String, Object> removeDirectory(String storeDir) throws IOException {
-		try{
-			File dir = new File(storeDir);
-		
-		Map<String,Object> result=new HashMap<String, Object>();
-		result.put("store-dir",dir);
-		result.put("size", FileUtils.sizeOfDirectory(dir));
-		FileUtils.deleteDirectory(dir);
-		}
-		catch (Exception e)
-		{
-			return null;
-		}
-		return null;
-	}
-
-	private static void registerShutdownHook( final GraphDatabaseService graphDb )
-	{
-		// Registers a shutdown hook for the Neo4j instance so that it
-		// shuts down nicely when the VM exits (even if you "Ctrl-C" the
-		// running application).
-		Runtime.getRuntime().addShutdownHook( new Thread()
-		{
-			@Override
-			public void run()
-			{
-				graphDb.shutdown();
-			}
-		} );
-	}
 }
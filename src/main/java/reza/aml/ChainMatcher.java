@@ -0,0 +1,215 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/*
+ * Step 1 for layering chains deeper than one intermediate: u->v1->v2->...->vk->w.
+ * 
+ * Starting from every transaction u->v1 of at least amountThreshold (in file order), chains are expanded 
+ * one hop at a time through the sender index, so only transactions sent by the last account of the chain are tried. 
+ * A hop is only taken if it passes the amount and time conditions of the TransactionMatcher, and the amount 
+ * has not drifted more than allowedAmountDrift from the first transaction of the chain. 
+ * The hops that pass are tried best first by the score of the time variance function, as the sliding window 
+ * of the TransactionMatcher picks the best scoring pair, and in file order among equal scores. 
+ * The search stops at maxDepth intermediates or after searchBudget hops per starting transaction, and keeps 
+ * the longest chain found. As in the TransactionMatcher, a transaction is the incoming side of at most one 
+ * pair and the outgoing side of at most one pair, so chains found later cannot reuse a hop of an earlier chain.
+ * Since each chain depends on the hops taken by the earlier ones, the search runs on the calling thread and 
+ * ignores the parallelism of the TransactionMatcher.
+ * 
+ * With maxDepth of 1 and the simplified time check the pairs are the same as the TransactionMatcher as long as 
+ * allowedAmountDrift is at least its allowedAmountDifference, a smaller drift also rejects pairs the TransactionMatcher 
+ * accepts. With a time variance function chains start in file order, while the sliding window takes the incoming 
+ * transactions of an account in time order, so two incoming transactions can compete for a hop the other way round.
+ */
+public class ChainMatcher {
+
+	TransactionMatcher hops;  // amount and time conditions of one hop
+	double amountThreshold;
+	double allowedAmountDrift;  // difference between the amount of the first transaction and any later transaction of the chain
+	int maxDepth;  // maximum number of intermediates
+	final int searchBudget;  // hops tried per starting transaction
+	
+	public ArrayList<int[]> chains = new ArrayList<int[]>();  // transaction indexes of every chain found by the last match
+	
+	
+	public ChainMatcher(TransactionMatcher hops, double allowedAmountDrift, int maxDepth)
+	{
+		this(hops, allowedAmountDrift, maxDepth, 10000);
+	}
+	
+	
+	public ChainMatcher(TransactionMatcher hops, double allowedAmountDrift, int maxDepth, int searchBudget)
+	{
+		this.hops = hops;
+		this.amountThreshold = hops.amountThreshold;
+		this.allowedAmountDrift = allowedAmountDrift;
+		this.maxDepth = maxDepth;
+		this.searchBudget = searchBudget;
+	}
+	
+	
+	// returns every hop of every chain as a pair <u->v, v->w>, in the order the chains are found
+	public LinkedHashMap<FinancialTransaction, FinancialTransaction> match(TransactionStore transactions)
+	{
+		chains.clear();
+		
+		TransactionMatcher.Partitions index = new TransactionMatcher.Partitions(transactions);
+		int[] sentStart = index.sentStart, sent = index.sent;
+		
+		// a transaction can be the incoming side of one pair and the outgoing side of one pair, as in the TransactionMatcher
+		boolean[] used = new boolean[transactions.size()];   // already the outgoing side of a pair
+		boolean[] keyed = new boolean[transactions.size()];  // already the incoming side of a pair
+		boolean[] onPath = new boolean[transactions.size()];
+		
+		// depth first search state, level k holds the (k+1)th transaction of the chain
+		int[] path = new int[maxDepth + 1];
+		int[] next = new int[maxDepth + 1];  // next candidate of level k to extend the chain with
+		int[] count = new int[maxDepth + 1];  // candidates of level k
+		int[][] candidates = new int[maxDepth + 1][16];  // hops that can follow the transaction of level k
+		double[][] scores = new double[maxDepth + 1][16];  // time variance score of each candidate
+		int[] best = new int[maxDepth + 1];
+		int[] budget = new int[1];
+		
+		for (int i = 0; i < transactions.size(); i++)
+		{
+			// condition 1 of trx matching algorithm 
+			if (transactions.amount(i) < amountThreshold || keyed[i])
+				continue;
+			
+			int bestLength = 1;
+			budget[0] = searchBudget;
+			int level = 0;
+			path[0] = i;
+			onPath[i] = true;
+			collect(transactions, sentStart, sent, used, keyed, onPath, i, path, 0, candidates, scores, count, budget);
+			next[0] = 0;
+			
+			while (level >= 0)
+			{
+				if (next[level] >= count[level])
+				{
+					onPath[path[level]] = false;
+					level--;
+					continue;
+				}
+				
+				// the best scoring candidate left, the first in file order among equal scores
+				int[] c = candidates[level];
+				double[] score = scores[level];
+				int pick = next[level];
+				for (int k = pick + 1; k < count[level]; k++)
+					if (score[k] > score[pick])
+						pick = k;
+				int j = c[pick];
+				double picked = score[pick];
+				
+				// the candidates before it move up one, so the ones left stay in file order
+				System.arraycopy(c, next[level], c, next[level] + 1, pick - next[level]);
+				System.arraycopy(score, next[level], score, next[level] + 1, pick - next[level]);
+				c[next[level]] = j;
+				score[next[level]] = picked;
+				next[level]++;
+				
+				level++;
+				path[level] = j;
+				onPath[j] = true;
+				collect(transactions, sentStart, sent, used, keyed, onPath, i, path, level, candidates, scores, count, budget);
+				next[level] = 0;
+				
+				if (level + 1 > bestLength)
+				{
+					bestLength = level + 1;
+					System.arraycopy(path, 0, best, 0, bestLength);
+					if (level == maxDepth)
+						break;
+				}
+			}
+			
+			// clear the search state of this starting transaction
+			for (int k = 0; k <= level; k++)
+				onPath[path[k]] = false;
+			
+			if (bestLength > 1)
+			{
+				int[] chain = new int[bestLength];
+				System.arraycopy(best, 0, chain, 0, bestLength);
+				for (int k = 0; k < bestLength; k++)
+				{
+					if (k < bestLength - 1)
+						keyed[chain[k]] = true;
+					if (k > 0)
+						used[chain[k]] = true;
+				}
+				chains.add(chain);
+			}
+		}
+		
+		LinkedHashMap<FinancialTransaction, FinancialTransaction> pairs = new LinkedHashMap<FinancialTransaction, FinancialTransaction>();
+		for (int[] chain : chains)
+			for (int k = 0; k + 1 < chain.length; k++)
+				pairs.put(transactions.get(chain[k]), transactions.get(chain[k + 1]));
+		
+		return pairs;
+	}
+	
+	
+	// the hops that can follow path[level], in file order with their scores. Nothing follows at maxDepth 
+	// intermediates or a transaction that is already the incoming side of another pair
+	void collect(TransactionStore transactions, int[] sentStart, int[] sent, boolean[] used, boolean[] keyed, boolean[] onPath, 
+			int first, int[] path, int level, int[][] candidates, double[][] scores, int[] count, int[] budget)
+	{
+		count[level] = 0;
+		int last = path[level];
+		if (level == maxDepth || (level > 0 && keyed[last]))
+			return;
+		
+		for (int s = sentStart[transactions.receiver(last)]; s < sentStart[transactions.receiver(last) + 1] && budget[0] > 0; s++)
+		{
+			int j = sent[s];
+			if (used[j] || onPath[j])
+				continue;
+			
+			budget[0]--;
+			if (!hops.matchesHop(transactions, last, j) 
+					|| Math.abs(transactions.amount(first) - transactions.amount(j)) > allowedAmountDrift)
+				continue;
+			
+			if (count[level] == candidates[level].length)
+			{
+				candidates[level] = Arrays.copyOf(candidates[level], count[level] * 2);
+				scores[level] = Arrays.copyOf(scores[level], count[level] * 2);
+			}
+			candidates[level][count[level]] = j;
+			scores[level][count[level]] = hops.hopScore(transactions, last, j);
+			count[level]++;
+		}
+	}
+	
+}
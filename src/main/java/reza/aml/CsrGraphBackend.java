@@ -0,0 +1,299 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * In memory graph backend.
+ * 
+ * Edges are appended to primitive arrays while the graph is built, with a map from (from, to) to the edge 
+ * so weights can be incremented. The first time edges are iterated, they are compacted into compressed 
+ * sparse rows (an offsets array per direction, indexed by node handle). Incrementing a weight does not 
+ * change the rows; adding nodes or edges rebuilds them on the next iteration.
+ */
+public class CsrGraphBackend implements GraphBackend {
+
+	// nodes
+	int nodeCount;
+	long[] ids = new long[16];
+	LongIntHashMap idToNode = new LongIntHashMap();
+	HashMap<String, Object>[] properties = newPropertyArray(16);
+	HashMap<String, BitSet> labels = new HashMap<String, BitSet>();
+	NodeWeights weights = new NodeWeights();
+	
+	// edges, in creation order
+	int edgeCount;
+	int[] edgeFrom = new int[16];
+	int[] edgeTo = new int[16];
+	int[] edgeWeight = new int[16];
+	int[] edgeAmount = new int[16];
+	int[] edgeTime = new int[16];
+	long[] edgeId = new long[16];
+	HashMap<String, Object>[] edgeProperties = newPropertyArray(16);  // properties given to addEdge, null for transaction edges
+	LongIntHashMap edgeIndex = new LongIntHashMap();  // (from << 32 | to) -> edge of addOrIncrementEdge
+	
+	// compressed sparse rows, edges of node n are outEdges[outStart[n] .. outStart[n+1])
+	boolean compacted;
+	int[] outStart, outEdges;
+	int[] inStart, inEdges;
+	
+	
+	public int upsertNode(long id)
+	{
+		int node = findNode(id);
+		return node >= 0 ? node : createNode(id);
+	}
+	
+	
+	public int findNode(long id)
+	{
+		return idToNode.get(id, -1);
+	}
+	
+	
+	public int createNode(long id)
+	{
+		if (nodeCount == ids.length)
+		{
+			ids = Arrays.copyOf(ids, nodeCount * 2);
+			properties = Arrays.copyOf(properties, nodeCount * 2);
+		}
+		ids[nodeCount] = id;
+		weights.ensure(nodeCount);
+		if (idToNode.get(id, -1) < 0)
+			idToNode.put(id, nodeCount);
+		compacted = false;
+		return nodeCount++;
+	}
+	
+	
+	public int nodeCount()
+	{
+		return nodeCount;
+	}
+	
+	
+	public long nodeId(int node)
+	{
+		return ids[node];
+	}
+	
+	
+	public int addOrIncrementEdge(int from, int to, int amount, int time, int transactionId)
+	{
+		long key = ((long) from << 32) | to;
+		int edge = edgeIndex.get(key, -1);
+		if (edge >= 0)
+		{
+			weights.incrementEdge(from, to, ++edgeWeight[edge]);
+			return edgeWeight[edge];
+		}
+		
+		edge = newEdge(from, to, 1);
+		edgeAmount[edge] = amount;
+		edgeTime[edge] = time;
+		edgeId[edge] = transactionId;
+		edgeIndex.put(key, edge);
+		return 1;
+	}
+	
+	
+	public void addEdge(int from, int to, int weight, Map<String, Object> properties)
+	{
+		int edge = newEdge(from, to, weight);
+		Object id = properties.get("id");
+		if (id instanceof Number)
+			edgeId[edge] = ((Number) id).longValue();
+		
+		edgeProperties[edge] = new HashMap<String, Object>(properties);
+		edgeProperties[edge].remove("weight");
+	}
+	
+	
+	// null if the edge does not have the property. Transaction edges only have the properties of their own arrays
+	Object getEdgeProperty(int edge, String key)
+	{
+		return edgeProperties[edge] == null ? null : edgeProperties[edge].get(key);
+	}
+	
+	
+	int newEdge(int from, int to, int weight)
+	{
+		if (edgeCount == edgeFrom.length)
+		{
+			int capacity = edgeCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+			edgeAmount = Arrays.copyOf(edgeAmount, capacity);
+			edgeTime = Arrays.copyOf(edgeTime, capacity);
+			edgeId = Arrays.copyOf(edgeId, capacity);
+			edgeProperties = Arrays.copyOf(edgeProperties, capacity);
+		}
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeWeight[edgeCount] = weight;
+		weights.addEdge(from, to, weight);
+		compacted = false;
+		return edgeCount++;
+	}
+	
+	
+	public void forEachOutEdge(int node, EdgeVisitor visitor)
+	{
+		compact();
+		for (int k = outStart[node]; k < outStart[node + 1]; k++)
+			visitor.visit(edgeTo[outEdges[k]], edgeWeight[outEdges[k]]);
+	}
+	
+	
+	public void forEachInEdge(int node, EdgeVisitor visitor)
+	{
+		compact();
+		for (int k = inStart[node]; k < inStart[node + 1]; k++)
+			visitor.visit(edgeFrom[inEdges[k]], edgeWeight[inEdges[k]]);
+	}
+	
+	
+	public NodeWeights weights()
+	{
+		return weights;
+	}
+	
+	
+	// builds the rows of both directions with a counting sort of the edges, edges of a node stay in creation order
+	void compact()
+	{
+		if (compacted)
+			return;
+		
+		outStart = new int[nodeCount + 1];
+		inStart = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++)
+		{
+			outStart[edgeFrom[e] + 1]++;
+			inStart[edgeTo[e] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++)
+		{
+			outStart[n + 1] += outStart[n];
+			inStart[n + 1] += inStart[n];
+		}
+		
+		int[] nextOut = Arrays.copyOf(outStart, nodeCount);
+		int[] nextIn = Arrays.copyOf(inStart, nodeCount);
+		outEdges = new int[edgeCount];
+		inEdges = new int[edgeCount];
+		for (int e = 0; e < edgeCount; e++)
+		{
+			outEdges[nextOut[edgeFrom[e]]++] = e;
+			inEdges[nextIn[edgeTo[e]]++] = e;
+		}
+		
+		compacted = true;
+	}
+	
+	
+	public void setProperty(int node, String key, Object value)
+	{
+		if (properties[node] == null)
+			properties[node] = new HashMap<String, Object>();
+		properties[node].put(key, value);
+	}
+	
+	
+	public Object getProperty(int node, String key)
+	{
+		if (key.equals("id"))
+			return ids[node];
+		return properties[node] == null ? null : properties[node].get(key);
+	}
+	
+	
+	public void addLabel(int node, String label)
+	{
+		BitSet nodes = labels.get(label);
+		if (nodes == null)
+		{
+			nodes = new BitSet();
+			labels.put(label, nodes);
+		}
+		nodes.set(node);
+	}
+	
+	
+	public void removeProperty(int node, String key)
+	{
+		if (properties[node] != null)
+			properties[node].remove(key);
+	}
+	
+	
+	public void removeLabel(int node, String label)
+	{
+		BitSet nodes = labels.get(label);
+		if (nodes != null)
+			nodes.clear(node);
+	}
+	
+	
+	public boolean hasLabel(int node, String label)
+	{
+		BitSet nodes = labels.get(label);
+		return nodes != null && nodes.get(node);
+	}
+	
+	
+	public Tx beginTx()
+	{
+		return new Tx()
+		{
+			public void success()
+			{
+			}
+			
+			public void close()
+			{
+			}
+		};
+	}
+	
+	
+	public void shutdown()
+	{
+	}
+	
+	
+	@SuppressWarnings("unchecked")
+	static HashMap<String, Object>[] newPropertyArray(int size)
+	{
+		return (HashMap<String, Object>[]) new HashMap<?, ?>[size];
+	}
+	
+}
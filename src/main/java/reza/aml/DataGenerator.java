@@ -69,7 +69,7 @@ public class DataGenerator {
 		static int MLIntermediatesHigh = 5; // number of neighbours each ML account should have .. to be changed
 		
 		// # of columns (depth)
-		static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, current implementation only detect depth of 1
+		static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, depth > 1 needs App.maxChainDepth
 		static int MLIntermeediatesDepthHigh = 1; // max depth
 
 		
@@ -92,7 +92,7 @@ public class DataGenerator {
 //	static int MLIntermediatesHigh = 5; // number of neighbours each ML account should have .. to be changed
 //	
 //	// # of columns (depth)
-//	static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, current implementation only detect depth of 1
+//	static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, depth > 1 needs App.maxChainDepth
 //	static int MLIntermeediatesDepthHigh = 3; // max depth
 	
 // ---------------------------	
@@ -103,7 +103,7 @@ public class DataGenerator {
 //	static int MLIntermediatesHigh = 1; // number of neighbours each ML account should have .. to be changed
 //	
 //	// # of columns (depth)
-//	static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, current implementation only detect depth of 1
+//	static int MLIntermeediatesDepth = 1; //    min depth, has to be >= 1 to be detected by AML, depth > 1 needs App.maxChainDepth
 //	static int MLIntermeediatesDepthHigh = 5; // max depth
 
 	
@@ -129,8 +129,9 @@ public class DataGenerator {
 		
 		
 	
+		AccountRegistry accounts = new AccountRegistry();
 		ArrayList<FinancialNode> nodes = new ArrayList<FinancialNode>();
-		ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
+		TransactionStore transactions = new TransactionStore(accounts);
 		
 		
 		
@@ -149,8 +150,7 @@ public class DataGenerator {
 		System.out.println("Nodes...");
 		for (i = 1; i <= nodeSize; i++)
 		{
-			FinancialNode node = new FinancialNode();
-			node.name = i;
+			FinancialNode node = accounts.node(accounts.intern(i));
 			//System.out.println(node.toString());
 			nodes.add(node);
 		}
@@ -178,19 +178,11 @@ public class DataGenerator {
          	
 			for (int j=1; j<=transactionCountInstance; j++)
 			{
-				FinancialTransaction transaction = new FinancialTransaction();
-				transaction.name = i*10+j;
-				transaction.sender = nodes.get(sender);
-	            transaction.receiver = nodes.get(receiver);  
-	      				
-				// for now all transactions are within a specified range 
-				transaction.amount = randInt(transactionValueMin, transactionValueMax);
-				
-				// for now all tranx are between hour 1 and hour 24, omitting minute and seconds  
-				transaction.time =  randInt(transactionTimeMin, transactionTimeMax);
-				
-				//System.out.println(transaction.toString());
-				transactions.add(transaction);	
+				transactions.add(i*10+j, 
+						nodes.get(sender).name, 
+						nodes.get(receiver).name,  
+						randInt(transactionValueMin, transactionValueMax),  // for now all transactions are within a specified range 
+						randInt(transactionTimeMin, transactionTimeMax));  // for now all tranx are between hour 1 and hour 24, omitting minute and seconds  
 			}
 			
 		}
@@ -320,27 +312,13 @@ public class DataGenerator {
 							int id = (100000000 * i) + (1000000 * j) + (1000 * k) + (10 * n); // give large ids for transactions so it easy to differenciate
 			
 							// u->v
-							FinancialTransaction transaction = new FinancialTransaction();
-							transaction.name = id;
-							transaction.sender = nodes.get(tranSource);
-					        transaction.receiver = nodes.get(intermediate);
-							transaction.amount = MLtransactionAmountInput;
-							transaction.time =  MLtransactionTimeMin;
-							//System.out.println(transaction.toString());
-							transactions.add(transaction);
+							transactions.add(id, nodes.get(tranSource).name, nodes.get(intermediate).name, MLtransactionAmountInput, MLtransactionTimeMin);
 							
 							// if we have reached the end of depth, make a transaction from current immediate to receiver
 							if (tranDestination > -1)
 							{
 								//v->w
-								FinancialTransaction transaction2 = new FinancialTransaction();
-								transaction2.name = id+1;
-								transaction2.sender = nodes.get(intermediate);
-								transaction2.receiver = nodes.get(tranDestination);
-								transaction2.amount = MLtransactionAmountOutput;
-								transaction2.time =  MLtransactionTimeMax;
-								//System.out.println(transaction.toString());
-								transactions.add(transaction2);
+								transactions.add(id+1, nodes.get(intermediate).name, nodes.get(tranDestination).name, MLtransactionAmountOutput, MLtransactionTimeMax);
 							}
 							
 						}
@@ -373,7 +351,7 @@ public class DataGenerator {
 				FileWriter fw = new FileWriter("transactions.txt");
 				 
 				for (i = 0; i < transactions.size(); i++) {
-					fw.write(transactions.get(i).toStringFile());
+					fw.write(transactions.toStringFile(i));
 					fw.write(System.getProperty("line.separator"));
 				}
 			 
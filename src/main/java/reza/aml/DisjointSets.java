@@ -0,0 +1,111 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Disjoint sets (union-find) of dense node handles, with path compression and union by rank.
+ * Step 5 joins the two nodes of every dense pair, the ML groups are then the sets with more than one node:
+ * the connected components of the dense pairs.
+ */
+public class DisjointSets {
+
+	int[] parent;
+	byte[] rank;  // upper bound of the height of the tree of a root, at most log2(size)
+	
+	
+	public DisjointSets(int size)
+	{
+		parent = new int[size];
+		rank = new byte[size];
+		for (int node = 0; node < size; node++)
+			parent[node] = node;
+	}
+	
+	
+	public int size()
+	{
+		return parent.length;
+	}
+	
+	
+	// root of the set of node, the nodes on the way point to the root afterwards
+	public int find(int node)
+	{
+		int root = node;
+		while (parent[root] != root)
+			root = parent[root];
+		
+		while (parent[node] != root)
+		{
+			int next = parent[node];
+			parent[node] = root;
+			node = next;
+		}
+		return root;
+	}
+	
+	
+	// room for nodes up to size, the new nodes are sets of their own
+	void grow(int size)
+	{
+		int oldSize = parent.length;
+		parent = Arrays.copyOf(parent, size);
+		rank = Arrays.copyOf(rank, size);
+		for (int node = oldSize; node < size; node++)
+			parent[node] = node;
+	}
+	
+	
+	// takes node out of its set. Only valid if no other node points to it, e.g. for every node of a set at once
+	void makeSet(int node)
+	{
+		parent[node] = node;
+		rank[node] = 0;
+	}
+	
+	
+	// joins the sets of a and b, returns false if they were already one set
+	public boolean union(int a, int b)
+	{
+		int rootA = find(a), rootB = find(b);
+		if (rootA == rootB)
+			return false;
+		
+		// the lower tree goes under the higher one
+		if (rank[rootA] < rank[rootB])
+			parent[rootA] = rootB;
+		else if (rank[rootA] > rank[rootB])
+			parent[rootB] = rootA;
+		else
+		{
+			parent[rootB] = rootA;
+			rank[rootA]++;
+		}
+		return true;
+	}
+	
+}
@@ -28,6 +28,7 @@ public class FinancialNode {
 
 	
 	public int name;
+	public int ordinal = -1;  // index of the account in AccountRegistry, -1 if not registered
 	
 	public String toString()
 	{
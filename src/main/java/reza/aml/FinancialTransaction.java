@@ -33,6 +33,7 @@ public class FinancialTransaction {
 	public int amount;
 	public int time;
 	public int weight;
+	public int index = -1;  // position in TransactionStore, -1 if not from a store
 	
 	
 	public String toString()
@@ -0,0 +1,101 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Map;
+
+/*
+ * Graph of matched transactions used by steps 2 to 5.
+ * 
+ * Nodes are accounts (and the shared nodes of step 3.5), identified by their id property. The backend gives 
+ * every node a dense handle 0..nodeCount()-1 in creation order, and the algorithm only works with handles.
+ * Edges are SEND relationships with a weight.
+ * 
+ * Neo4jGraphBackend keeps the graph in the embedded Neo4j store, CsrGraphBackend keeps it in memory.
+ */
+public interface GraphBackend {
+
+	// returns the handle of the node with this id, creating the node if it does not exist
+	int upsertNode(long id);
+	
+	// returns the handle of the node with this id, -1 if it does not exist
+	int findNode(long id);
+	
+	// creates a new node even if a node with the same id exists
+	int createNode(long id);
+	
+	int nodeCount();
+	
+	long nodeId(int node);
+	
+	
+	// adds a SEND edge with weight 1, or increments the weight of the existing edge. Returns the new weight.
+	// amount, time and id of the transaction are only set on new edges 
+	int addOrIncrementEdge(int from, int to, int amount, int time, int transactionId);
+	
+	// always adds a new SEND edge, with the given extra properties
+	void addEdge(int from, int to, int weight, Map<String, Object> properties);
+	
+	void forEachOutEdge(int node, EdgeVisitor visitor);
+	
+	void forEachInEdge(int node, EdgeVisitor visitor);
+	
+	// weights and degrees of all nodes, kept up to date as edges are added
+	NodeWeights weights();
+	
+	
+	void setProperty(int node, String key, Object value);
+	
+	// null if the node does not have the property
+	Object getProperty(int node, String key);
+	
+	void addLabel(int node, String label);
+	
+	// the remove methods do nothing if the node does not have the property or label
+	void removeProperty(int node, String key);
+	
+	void removeLabel(int node, String label);
+	
+	
+	// groups changes (and reads) the way Neo4j transactions do. The in memory backend applies changes immediately
+	Tx beginTx();
+	
+	void shutdown();
+	
+	
+	interface EdgeVisitor
+	{
+		// other is the handle of the node at the other end of the edge
+		void visit(int other, int weight);
+	}
+	
+	
+	interface Tx extends AutoCloseable
+	{
+		void success();
+		
+		void close();
+	}
+}
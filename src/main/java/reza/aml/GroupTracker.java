@@ -0,0 +1,335 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * ML groups kept between runs of incremental detection (App.incrementalGraph), by account id.
+ * 
+ * The groups are the connected components of the dense pairs. The pairs of the last run and the disjoint 
+ * sets of their accounts are saved next to the store, so a run only applies the difference:
+ * - a new dense pair joins the groups of its accounts, a union in near constant time,
+ * - for a dense pair that is gone only the group it was in is split again: the remaining pairs of the group are
+ *   searched from both accounts of the removed pair and these accounts get new sets, the other groups are untouched.
+ * 
+ * The ML label and property only say that an account is in a group, so only the accounts that joined a group
+ * or left every group have to be rewritten.
+ * 
+ * Accounts get dense indexes, and the dense pairs are the neighbour lists of the indexes, so the pairs are 
+ * compared with arrays and a LongIntHashMap instead of sets of boxed keys.
+ */
+public class GroupTracker {
+
+	static final String FILE = "groups.txt";
+	
+	LongIntHashMap indexes = new LongIntHashMap();  // account id -> index
+	long[] accounts = new long[16];  // index -> account id
+	int size;
+	
+	DisjointSets sets = new DisjointSets(16);
+	int[][] neighbours = new int[16][];  // accounts each account has a dense pair with, the dense pairs of the groups
+	int[] degree = new int[16];
+	int[] stamp = new int[16];  // search (or update) that last reached each account
+	int stamps;
+	
+	// accounts that joined a group and accounts that left every group in the last update
+	public ArrayList<Long> joined = new ArrayList<Long>(), left = new ArrayList<Long>();
+	public int splitGroups;  // groups split again in the last update
+	
+	
+	// group of the account: the account id of the root of its set, or the account itself if it is not in a group
+	public long group(long account)
+	{
+		int index = indexes.get(account, -1);
+		return index < 0 ? account : accounts[sets.find(index)];
+	}
+	
+	
+	public boolean inGroup(long account)
+	{
+		int index = indexes.get(account, -1);
+		return index >= 0 && degree[index] > 0;
+	}
+	
+	
+	// makes the dense pairs {account, account} of this run the groups, the pairs of the previous run that are not in the list are removed
+	public void update(List<long[]> densePairs)
+	{
+		joined.clear();
+		left.clear();
+		splitGroups = 0;
+		
+		// dense pairs of this run, smaller index << 32 | larger index, once each
+		LongIntHashMap current = new LongIntHashMap(densePairs.size());
+		long[] added = new long[densePairs.size()];
+		int addedCount = 0;
+		for (long[] pair : densePairs)
+		{
+			long key = key(index(pair[0]), index(pair[1]));
+			if (current.get(key, 0) == 0)
+			{
+				current.put(key, 1);
+				added[addedCount++] = key;
+			}
+		}
+		
+		long[] removed = new long[16];
+		int removedCount = 0;
+		for (int a = 0; a < size; a++)
+			for (int k = 0; k < degree[a]; k++)
+			{
+				int b = neighbours[a][k];
+				if (a < b && current.get(key(a, b), 0) == 0)
+				{
+					if (removedCount == removed.length)
+						removed = Arrays.copyOf(removed, removedCount * 2);
+					removed[removedCount++] = key(a, b);
+				}
+			}
+		
+		// -1 for the accounts that left every group, +1 for the accounts that joined one, 
+		// 0 for an account that left with one pair and came back with another
+		int[] change = new int[size];
+		int[] changed = new int[16];
+		int changedCount = 0;
+		
+		for (int r = 0; r < removedCount; r++)
+		{
+			int a = (int) (removed[r] >>> 32), b = (int) removed[r];
+			unlink(a, b);
+			unlink(b, a);
+			split(a, b);
+			
+			for (int node : new int[] { a, b })
+				if (degree[node] == 0)
+				{
+					if (change[node] == 0)
+					{
+						if (changedCount == changed.length)
+							changed = Arrays.copyOf(changed, changedCount * 2);
+						changed[changedCount++] = node;
+					}
+					change[node]--;
+				}
+		}
+		
+		for (int p = 0; p < addedCount; p++)
+		{
+			int a = (int) (added[p] >>> 32), b = (int) added[p];
+			if (linked(a, b))
+				continue;
+			
+			for (int node : new int[] { a, b })
+				if (degree[node] == 0)
+				{
+					if (change[node] == 0)
+					{
+						if (changedCount == changed.length)
+							changed = Arrays.copyOf(changed, changedCount * 2);
+						changed[changedCount++] = node;
+					}
+					change[node]++;
+				}
+			link(a, b);
+			link(b, a);
+			sets.union(a, b);
+		}
+		
+		for (int c = 0; c < changedCount; c++)
+		{
+			int node = changed[c];
+			if (change[node] > 0)
+				joined.add(accounts[node]);
+			else if (change[node] < 0)
+				left.add(accounts[node]);
+		}
+	}
+	
+	
+	// true if a and b are a dense pair
+	boolean linked(int a, int b)
+	{
+		for (int k = 0; k < degree[a]; k++)
+			if (neighbours[a][k] == b)
+				return true;
+		return false;
+	}
+	
+	
+	// the group of a and b lost the pair a-b: every account reachable from a or b over the remaining pairs gets a new set
+	void split(int a, int b)
+	{
+		int[] reachedFromA = component(a);
+		if (Arrays.binarySearch(reachedFromA, b) >= 0)
+			return;  // still connected through other pairs
+		
+		int[] reachedFromB = component(b);
+		for (int node : reachedFromA)
+			sets.makeSet(node);
+		for (int node : reachedFromB)
+			sets.makeSet(node);
+		join(reachedFromA);
+		join(reachedFromB);
+		splitGroups++;
+	}
+	
+	
+	// accounts reachable from start over the dense pairs, in ascending order
+	int[] component(int start)
+	{
+		int[] component = new int[16];
+		int count = 0;
+		int reached = ++stamps;
+		stamp[start] = reached;
+		component[count++] = start;
+		for (int next = 0; next < count; next++)
+		{
+			int node = component[next];
+			for (int k = 0; k < degree[node]; k++)
+				if (stamp[neighbours[node][k]] != reached)
+				{
+					stamp[neighbours[node][k]] = reached;
+					if (count == component.length)
+						component = Arrays.copyOf(component, count * 2);
+					component[count++] = neighbours[node][k];
+				}
+		}
+		component = Arrays.copyOf(component, count);
+		Arrays.sort(component);
+		return component;
+	}
+	
+	
+	void join(int[] component)
+	{
+		for (int node : component)
+			sets.union(component[0], node);
+	}
+	
+	
+	// index of the account, new accounts get the next index
+	int index(long account)
+	{
+		int index = indexes.get(account, -1);
+		if (index >= 0)
+			return index;
+		
+		if (size == accounts.length)
+		{
+			accounts = Arrays.copyOf(accounts, size * 2);
+			neighbours = Arrays.copyOf(neighbours, size * 2);
+			degree = Arrays.copyOf(degree, size * 2);
+			stamp = Arrays.copyOf(stamp, size * 2);
+			sets.grow(size * 2);
+		}
+		accounts[size] = account;
+		indexes.put(account, size);
+		return size++;
+	}
+	
+	
+	void link(int from, int to)
+	{
+		if (neighbours[from] == null)
+			neighbours[from] = new int[2];
+		else if (degree[from] == neighbours[from].length)
+			neighbours[from] = Arrays.copyOf(neighbours[from], degree[from] * 2);
+		neighbours[from][degree[from]++] = to;
+	}
+	
+	
+	void unlink(int from, int to)
+	{
+		for (int k = 0; k < degree[from]; k++)
+			if (neighbours[from][k] == to)
+			{
+				neighbours[from][k] = neighbours[from][--degree[from]];
+				return;
+			}
+	}
+	
+	
+	static long key(int a, int b)
+	{
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+	
+	
+	// "set account parent" for every account in a group, then "pair account account" for every dense pair
+	public void save(String storeDir) throws IOException
+	{
+		try (FileWriter out = new FileWriter(new File(storeDir, FILE)))
+		{
+			for (int index = 0; index < size; index++)
+				if (degree[index] > 0)
+					out.write("set " + accounts[index] + " " + accounts[sets.find(index)] + "\n");
+			for (int a = 0; a < size; a++)
+				for (int k = 0; k < degree[a]; k++)
+					if (a < neighbours[a][k])
+						out.write("pair " + accounts[a] + " " + accounts[neighbours[a][k]] + "\n");
+		}
+	}
+	
+	
+	// the groups saved by the last run, no groups if the store does not have them
+	public static GroupTracker load(String storeDir) throws IOException
+	{
+		GroupTracker tracker = new GroupTracker();
+		File file = new File(storeDir, FILE);
+		if (!file.exists())
+			return tracker;
+		
+		try (BufferedReader in = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				String[] fields = line.split(" ");
+				int a = tracker.index(Long.parseLong(fields[1])), b = tracker.index(Long.parseLong(fields[2]));
+				if (fields[0].equals("set"))
+				{
+					// sets were saved with every account pointing to its root, so the trees have height 1
+					tracker.sets.parent[a] = b;
+					if (a != b)
+						tracker.sets.rank[b] = 1;
+				}
+				else if (!tracker.linked(a, b))
+				{
+					tracker.link(a, b);
+					tracker.link(b, a);
+				}
+			}
+		}
+		return tracker;
+	}
+	
+}
@@ -24,88 +24,55 @@
 
 package reza.aml;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
 public class Input {
 
 	
-	public static ArrayList<String> readNodes(String path)
-
+	// accounts of nodes.txt, in file order
+	public static AccountRegistry readAccounts(String path)
 	{
-		 // open input files
-        ArrayList<String> nodes = new ArrayList<String>();
-        File file = new File(path);
-        BufferedReader reader = null;
-        try {
-        	reader = new BufferedReader(new FileReader(file));
-            String text = null;
-            while ((text = reader.readLine()) != null) {
-            	if (!text.startsWith("#"))
-            		nodes.add(text.trim());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (IOException e) {
-            }
-        }
-        
-       
-		return nodes;
-		
+		return readAccounts(path, 1);
 	}
 	
 	
+	// parallelism > 1 parses chunks of the file on that many threads, see TransactionParser
+	public static AccountRegistry readAccounts(String path, int parallelism)
+	{
+		AccountRegistry accounts = new AccountRegistry();
+		try {
+			TransactionParser.readAccounts(path, accounts, parallelism);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return accounts;
+	}
+	
 	
+	// transactions as FinancialTransaction objects, see readTransactionStore
 	public static ArrayList<FinancialTransaction>  readTransactions(String path)
 	{
-		 ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
-		 File  file = new File(path);
-		 BufferedReader  reader = null;
-	        try {
-	        	reader = new BufferedReader(new FileReader(file));
-	            String text = null;
-	            while ((text = reader.readLine()) != null) {
-	            	if (!text.startsWith("#") && !text.isEmpty())
-	            	{
-	            	
-	            	//	System.out.println(text);
-	            		FinancialTransaction t = new FinancialTransaction();
-	            		String[] oneTransaction = text.split(",");
-	            	
-	            		t.name = Integer.parseInt(oneTransaction[0]);
-	            		
-	            		FinancialNode sender = new FinancialNode();
-	            		sender.name = Integer.parseInt(oneTransaction[1].trim());
-	            		t.sender = sender;
-	            		
-	            		FinancialNode receiver = new FinancialNode();
-	            		receiver.name = Integer.parseInt(oneTransaction[2].trim());
-	            		t.receiver = receiver;
-	            		
-	            		t.amount = Integer.parseInt(oneTransaction[3].trim());
-	            		t.time = Integer.parseInt(oneTransaction[4].trim());
-	            		transactions.add(t);
-	            	}
-	            }
-	        } catch (Exception e) {
-	            e.printStackTrace();
-	        } finally {
-	            try {
-	                if (reader != null) {
-	                    reader.close();
-	                }
-	            } catch (IOException e) {
-	            }
-	        }
+		return new ArrayList<FinancialTransaction>(readTransactionStore(path, new AccountRegistry()).asList());
+	}
+	
+	
+	// accounts that are not in the registry yet are added to it, see TransactionParser
+	public static TransactionStore readTransactionStore(String path, AccountRegistry accounts)
+	{
+		return readTransactionStore(path, accounts, 1);
+	}
+	
+	
+	// parallelism > 1 parses chunks of the file on that many threads
+	public static TransactionStore readTransactionStore(String path, AccountRegistry accounts, int parallelism)
+	{
+		 TransactionStore transactions = new TransactionStore(accounts);
+	     try {
+	    	 TransactionParser.read(path, transactions, parallelism);
+	     } catch (Exception e) {
+	    	 e.printStackTrace();
+	     }
 	        
 	     return  transactions;  
 	        
@@ -0,0 +1,118 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing map from long keys to int values, without boxing.
+ */
+class LongIntHashMap {
+
+	static final long EMPTY = Long.MIN_VALUE;  // key that cannot be stored
+	
+	int size;
+	long[] keys;
+	int[] values;
+	
+	
+	LongIntHashMap()
+	{
+		this(16);
+	}
+	
+	
+	LongIntHashMap(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+	
+	
+	// value of the key, or missing if the key is not in the map
+	int get(long key, int missing)
+	{
+		int slot = slot(key);
+		return keys[slot] == EMPTY ? missing : values[slot];
+	}
+	
+	
+	void put(long key, int value)
+	{
+		int slot = slot(key);
+		if (keys[slot] == EMPTY)
+		{
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+		
+		// keep the table at most half full
+		if (size * 2 > keys.length)
+			rehash();
+	}
+	
+	
+	int size()
+	{
+		return size;
+	}
+	
+	
+	// slot of the key, or the empty slot where it would be inserted (linear probing)
+	int slot(long key)
+	{
+		int mask = keys.length - 1;
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+	
+	
+	void rehash()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		Arrays.fill(keys, EMPTY);
+		for (int k = 0; k < oldKeys.length; k++)
+		{
+			if (oldKeys[k] != EMPTY)
+			{
+				int slot = slot(oldKeys[k]);
+				keys[slot] = oldKeys[k];
+				values[slot] = oldValues[k];
+			}
+		}
+	}
+	
+}
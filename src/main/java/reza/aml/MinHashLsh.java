@@ -0,0 +1,208 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Approximate step 4 for large candidate sets: proposes the pairs that probably have a high similarity,
+ * which are then scored exactly by SimilarityEngine.forEachPair(long[], PairVisitor).
+ * 
+ * Every candidate gets a weighted MinHash sketch of its incoming and of its outgoing neighbours. 
+ * Hash h of a row is the neighbour x with the smallest -ln(u_h(x)) / w(x), where u_h(x) is uniform in (0,1), 
+ * so x is picked with a probability proportional to its weight, and two rows pick the same neighbour with
+ * a probability that grows with the weight they share. 
+ * 
+ * The hashes are split into bands of rows hashes per side. Two candidates are proposed when all hashes of a 
+ * band are the same on both sides, in at least one band. More rows per band propose fewer and more similar 
+ * pairs, more bands find more of the similar pairs (recall). Candidates without incoming or outgoing 
+ * edges have similarity 0 with every other candidate and are never proposed.
+ * 
+ * A bucket of m candidates proposes m(m-1)/2 pairs. Buckets above maxBucketSize (e.g. the candidates that all
+ * picked a hub) are skipped and counted, their pairs can still be proposed by other bands. 
+ * Pairs proposed by several bands are removed before the pair array grows, so it holds at most twice the distinct 
+ * pairs. More than MAX_PAIRS distinct pairs do not fit an array and fail with an IllegalStateException.
+ */
+public class MinHashLsh {
+
+	static final int MAX_PAIRS = Integer.MAX_VALUE - 8;  // largest array the VM allocates
+	
+	int bands;  // number of bands
+	int rows;  // hashes per band and side
+	long seed;
+	int maxBucketSize = 1000;  // candidates of a bucket, larger buckets are skipped. Must be positive
+	int skippedBuckets;  // buckets above maxBucketSize in the last propose
+	long skippedPairs;  // pairs of the skipped buckets (a pair can be counted in several bands)
+	
+	
+	public MinHashLsh(int bands, int rows, long seed)
+	{
+		this.bands = bands;
+		this.rows = rows;
+		this.seed = seed;
+	}
+	
+	
+	// pairs i < j of candidates of the engine that share a band, as i << 32 | j in ascending order
+	public long[] propose(SimilarityEngine engine)
+	{
+		if (maxBucketSize <= 0)
+			throw new IllegalArgumentException("maxBucketSize must be positive: " + maxBucketSize);
+		
+		int size = engine.size(), hashes = bands * rows;
+		int[] in = sketch(engine.in, hashes, 0), out = sketch(engine.out, hashes, 1);
+		
+		long[] pairs = new long[16];
+		int count = 0;
+		skippedBuckets = 0;
+		skippedPairs = 0;
+		long[] buckets = new long[size];
+		for (int b = 0; b < bands; b++)
+		{
+			// bucket of every candidate in this band (high 32 bits) and the candidate (low 32 bits). 
+			// Bands of different hashes can end up in the same bucket, these pairs are only scored for nothing
+			int candidates = 0;
+			for (int i = 0; i < size; i++)
+			{
+				if (in[i * hashes] < 0 || out[i * hashes] < 0)
+					continue;
+				
+				long key = seed + b;
+				for (int h = b * rows; h < (b + 1) * rows; h++)
+				{
+					key = mix(key ^ in[i * hashes + h]);
+					key = mix(key ^ out[i * hashes + h]);
+				}
+				buckets[candidates++] = (key & 0xFFFFFFFF00000000L) | i;
+			}
+			Arrays.sort(buckets, 0, candidates);
+			
+			// every pair of a bucket, the candidates of a bucket are in ascending order
+			int first = 0;
+			while (first < candidates)
+			{
+				int last = first + 1;
+				while (last < candidates && (buckets[last] >>> 32) == (buckets[first] >>> 32))
+					last++;
+				
+				if (last - first > maxBucketSize)
+				{
+					skippedBuckets++;
+					skippedPairs += (long) (last - first) * (last - first - 1) / 2;
+					first = last;
+					continue;
+				}
+				
+				for (int p = first; p < last; p++)
+					for (int q = p + 1; q < last; q++)
+					{
+						if (count == pairs.length)
+						{
+							// drop the pairs of earlier bands first, grow only when that frees less than half
+							count = unique(pairs, count);
+							if (count > pairs.length / 2)
+							{
+								if (pairs.length == MAX_PAIRS)
+									throw new IllegalStateException("More than " + MAX_PAIRS + " distinct pairs proposed, lower maxBucketSize or use more rows per band");
+								pairs = Arrays.copyOf(pairs, (int) Math.min(2L * pairs.length, MAX_PAIRS));
+							}
+						}
+						pairs[count++] = (buckets[p] << 32) | (buckets[q] & 0xFFFFFFFFL);
+					}
+				first = last;
+			}
+		}
+		
+		// a pair can share several bands
+		return Arrays.copyOf(pairs, unique(pairs, count));
+	}
+	
+	
+	// sorts the first count pairs and moves each pair once to the front, returns the number of distinct pairs
+	static int unique(long[] pairs, int count)
+	{
+		Arrays.sort(pairs, 0, count);
+		int unique = 0;
+		for (int p = 0; p < count; p++)
+			if (unique == 0 || pairs[p] != pairs[unique - 1])
+				pairs[unique++] = pairs[p];
+		return unique;
+	}
+	
+	
+	// hashes weighted MinHash hashes of every row, sketch[i * hashes + h] is the neighbour picked by hash h, -1 for empty rows
+	int[] sketch(SimilarityEngine.Rows rows, int hashes, int side)
+	{
+		int size = rows.start.length - 1;
+		int[] sketch = new int[size * hashes];
+		double[] minimum = new double[hashes];
+		for (int i = 0; i < size; i++)
+		{
+			Arrays.fill(sketch, i * hashes, (i + 1) * hashes, -1);
+			Arrays.fill(minimum, Double.MAX_VALUE);
+			for (int k = rows.start[i]; k < rows.start[i + 1]; k++)
+			{
+				long neighbour = mix(mix(seed ^ side) ^ rows.neighbours[k]);
+				double inverseWeight = 1.0 / rows.weights[k];
+				for (int h = 0; h < hashes; h++)
+				{
+					// -ln(u) >= 1 - u, most neighbours lose without the logarithm
+					double u = uniform(neighbour, h);
+					if ((1 - u) * inverseWeight >= minimum[h])
+						continue;
+					
+					double value = -Math.log(u) * inverseWeight;
+					if (value < minimum[h])
+					{
+						minimum[h] = value;
+						sketch[i * hashes + h] = rows.neighbours[k];
+					}
+				}
+			}
+		}
+		return sketch;
+	}
+	
+	
+	// uniform in (0,1) for hash h of a neighbour (hashed with the seed and side), the same in every row
+	static double uniform(long neighbour, int h)
+	{
+		long bits = mix(neighbour + (h + 1) * 0x9E3779B97F4A7C15L);
+		return ((bits >>> 11) + 0.5) * 0x1.0p-53;
+	}
+	
+	
+	// 64 bit finalizer of MurmurHash3
+	static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+}
@@ -0,0 +1,627 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.neo4j.cypher.javacompat.ExecutionEngine;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+/*
+ * Graph backend on an embedded Neo4j store. 
+ * 
+ * The store is wiped and rebuilt on every run, either edge by edge with Cypher or at once with bulkLoad,
+ * or kept between runs with open. Handles are indexes into the list of nodes of this run: 
+ * the nodes already in an opened store (in store id order), then the nodes created by this run.
+ * 
+ * A kept store has a watermark file with the number of transactions already added to it, and next to it
+ * the nodes of the accounts with their weights (saveNodes) and the shared nodes of step 3.5 (saveShared), 
+ * so open neither reads every edge nor walks every node.
+ */
+public class Neo4jGraphBackend implements GraphBackend {
+
+	enum TransactionTypes implements RelationshipType
+	{
+		SEND, RECEIVE
+	}
+	
+	static final Label ACCOUNT = DynamicLabel.label("Account");  // nodes of accounts, indexed on id
+	static final String WATERMARK = "watermark.properties";  // file of the store directory
+	static final String NODES = "nodes.bin";  // store id and weights of every handle when the watermark was written
+	static final String SHARED = "shared.bin";  // store ids of the nodes created after the nodes file, the shared nodes of step 3.5
+	
+	// parameterized queries, the execution engine caches one plan per query text
+	static final String FIND_ACCOUNT = "MATCH (n:Account {id: {id}}) RETURN n";
+	static final String FIND_EDGE = "MATCH (n:Account {id: {from}})-[rel:SEND]->(r:Account {id: {to}}) RETURN rel";
+	
+	GraphDatabaseService graphDb;
+	ExecutionEngine engine;
+	public QueryTimer queryTimer = new QueryTimer();  // latency of every query of this backend
+	
+	ArrayList<Node> nodes = new ArrayList<Node>();  // handle -> node
+	LongIntHashMap handles = new LongIntHashMap();  // neo4j node id -> handle
+	NodeWeights weights = new NodeWeights();
+	int savedNodes = -1;  // handles in the nodes file written by this run, -1 if none was written
+	int savedTransactions;  // transactions of the watermark of the nodes file
+	
+	
+	public Neo4jGraphBackend(String storeDir)
+	{
+		this(storeDir, true);
+	}
+	
+	
+	Neo4jGraphBackend(String storeDir, boolean reset)
+	{
+		// reset database 
+		if (reset)
+			removeDirectory(storeDir);
+		
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase( storeDir );
+		registerShutdownHook( graphDb );
+		engine = new ExecutionEngine( graphDb, StringLogger.DEV_NULL );
+		
+		// schema changes need their own transaction
+		if (reset)
+		{
+			try (Transaction tx = graphDb.beginTx())
+			{
+				graphDb.schema().indexFor(ACCOUNT).on("id").create();
+				tx.success();
+			}
+		}
+		try (Transaction tx = graphDb.beginTx())
+		{
+			graphDb.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+			tx.success();
+		}
+	}
+	
+	
+	public int upsertNode(long id)
+	{
+		int node = findNode(id);
+		if (node < 0)
+		{
+			node = createNode(id);
+			nodes.get(node).addLabel(ACCOUNT);
+		}
+		return node;
+	}
+	
+	
+	public int findNode(long id)
+	{
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("id", idValue(id));
+		
+		final int[] node = { -1 };
+		execute(FIND_ACCOUNT, parameters, new RowVisitor()
+		{
+			public boolean visit(Map<String, Object> row)
+			{
+				node[0] = handle((Node) row.get("n"));
+				return false;
+			}
+		});
+		return node[0];
+	}
+	
+	
+	public int createNode(long id)
+	{
+		Node node = graphDb.createNode();
+		node.setProperty( "id", idValue(id) );
+		return handle(node);
+	}
+	
+	
+	public int nodeCount()
+	{
+		return nodes.size();
+	}
+	
+	
+	public long nodeId(int node)
+	{
+		return ((Number) nodes.get(node).getProperty("id")).longValue();
+	}
+	
+	
+	public int addOrIncrementEdge(int from, int to, int amount, int time, int transactionId)
+	{
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("from", idValue(nodeId(from)));
+		parameters.put("to", idValue(nodeId(to)));
+		
+		final Relationship[] found = new Relationship[1];
+		execute(FIND_EDGE, parameters, new RowVisitor()
+		{
+			public boolean visit(Map<String, Object> row)
+			{
+				found[0] = (Relationship) row.get("rel");
+				return false;
+			}
+		});
+		Relationship relationship = found[0];
+		
+		// if relationship already exist
+		if (relationship != null)
+		{
+			int weight = Integer.parseInt(relationship.getProperty("weight").toString()) +1;
+			relationship.setProperty("weight", weight);
+			weights.incrementEdge(from, to, weight);
+			// time and amount are not updated for existing edges 
+			return weight;
+		}
+		
+		// if relationship(transaction) is new
+		relationship = nodes.get(from).createRelationshipTo(nodes.get(to), TransactionTypes.SEND);
+		relationship.setProperty("weight", 1);
+		relationship.setProperty("amount", amount);
+		relationship.setProperty("time", time);
+		relationship.setProperty("id", transactionId); // set the id as the name of the tranx
+		weights.addEdge(from, to, 1);
+		return 1;
+	}
+	
+	
+	public void addEdge(int from, int to, int weight, Map<String, Object> properties)
+	{
+		Relationship relationship = nodes.get(from).createRelationshipTo(nodes.get(to), TransactionTypes.SEND);
+		for (Map.Entry<String, Object> property : properties.entrySet())
+			relationship.setProperty(property.getKey(), property.getValue());
+		relationship.setProperty("weight", weight);
+		weights.addEdge(from, to, weight);
+	}
+	
+	
+	public void forEachOutEdge(int node, EdgeVisitor visitor)
+	{
+		for (Relationship relationship : nodes.get(node).getRelationships(Direction.OUTGOING))
+			visitor.visit(handle(relationship.getEndNode()), Integer.parseInt(relationship.getProperty("weight").toString()));
+	}
+	
+	
+	public void forEachInEdge(int node, EdgeVisitor visitor)
+	{
+		for (Relationship relationship : nodes.get(node).getRelationships(Direction.INCOMING))
+			visitor.visit(handle(relationship.getStartNode()), Integer.parseInt(relationship.getProperty("weight").toString()));
+	}
+	
+	
+	public NodeWeights weights()
+	{
+		return weights;
+	}
+	
+	
+	public void setProperty(int node, String key, Object value)
+	{
+		nodes.get(node).setProperty(key, value);
+	}
+	
+	
+	public Object getProperty(int node, String key)
+	{
+		return nodes.get(node).hasProperty(key) ? nodes.get(node).getProperty(key) : null;
+	}
+	
+	
+	public void addLabel(int node, String label)
+	{
+		nodes.get(node).addLabel(DynamicLabel.label(label));
+	}
+	
+	
+	public void removeProperty(int node, String key)
+	{
+		nodes.get(node).removeProperty(key);
+	}
+	
+	
+	public void removeLabel(int node, String label)
+	{
+		nodes.get(node).removeLabel(DynamicLabel.label(label));
+	}
+	
+	
+	public Tx beginTx()
+	{
+		final Transaction tx = graphDb.beginTx();
+		return new Tx()
+		{
+			public void success()
+			{
+				tx.success();
+			}
+			
+			public void close()
+			{
+				tx.close();
+			}
+		};
+	}
+	
+	
+	public void shutdown()
+	{
+		graphDb.shutdown();
+	}
+	
+	
+	/*
+	 * Writes a graph built in memory to a new store and opens it. 
+	 * 
+	 * The batch inserter writes the records directly, without transactions or lookups: 
+	 * node handles are mapped to store ids with an array, so loading is linear in the number of nodes and edges.
+	 * Handles of the opened backend are the same as the handles of the graph.
+	 */
+	public static Neo4jGraphBackend bulkLoad(String storeDir, CsrGraphBackend graph)
+	{
+		removeDirectory(storeDir);
+		
+		long[] nodeIds = new long[graph.nodeCount()];  // handle -> neo4j node id
+		BatchInserter inserter = BatchInserters.inserter(storeDir);
+		try
+		{
+			for (int node = 0; node < graph.nodeCount(); node++)
+			{
+				HashMap<String, Object> properties = new HashMap<String, Object>();
+				if (graph.properties[node] != null)
+					properties.putAll(graph.properties[node]);
+				properties.put("id", idValue(graph.nodeId(node)));
+				
+				ArrayList<Label> labels = new ArrayList<Label>();
+				labels.add(ACCOUNT);  // the graph is loaded after step 2, all nodes are accounts
+				for (String label : graph.labels.keySet())
+					if (graph.hasLabel(node, label))
+						labels.add(DynamicLabel.label(label));
+				
+				nodeIds[node] = inserter.createNode(properties, labels.toArray(new Label[labels.size()]));
+			}
+			
+			for (int edge = 0; edge < graph.edgeCount; edge++)
+			{
+				HashMap<String, Object> properties = new HashMap<String, Object>();
+				properties.put("weight", graph.edgeWeight[edge]);
+				properties.put("amount", graph.edgeAmount[edge]);
+				properties.put("time", graph.edgeTime[edge]);
+				properties.put("id", idValue(graph.edgeId[edge])); // set the id as the name of the tranx
+				if (graph.edgeProperties[edge] != null)
+					properties.putAll(graph.edgeProperties[edge]);
+				inserter.createRelationship(nodeIds[graph.edgeFrom[edge]], nodeIds[graph.edgeTo[edge]], TransactionTypes.SEND, properties);
+			}
+			
+			inserter.createDeferredSchemaIndex(ACCOUNT).on("id").create();
+		}
+		finally
+		{
+			inserter.shutdown();
+		}
+		
+		Neo4jGraphBackend backend = new Neo4jGraphBackend(storeDir, false);
+		try (Transaction tx = backend.graphDb.beginTx())
+		{
+			for (int node = 0; node < nodeIds.length; node++)
+				backend.handle(backend.graphDb.getNodeById(nodeIds[node]));
+			tx.success();
+		}
+		backend.weights = graph.weights;  // same handles
+		return backend;
+	}
+	
+	
+	/*
+	 * Opens the store of a previous run, keeping its accounts and edges. 
+	 * The results of the previous run (shared nodes of step 3.5 and ML labels of step 5) are removed, 
+	 * the later steps compute them again. ML labels are kept if the groups of the previous run were saved
+	 * with the store (GroupTracker), step 5 then only changes the accounts that joined or left a group.
+	 * 
+	 * If the previous run saved its nodes and shared nodes for the transactions of the watermark, the handles 
+	 * and weights are read from the nodes file and only the listed shared nodes are deleted, step 2 then
+	 * updates the weights with the edges of the new pairs. Otherwise every node and edge of the store is read.
+	 */
+	public static Neo4jGraphBackend open(String storeDir)
+	{
+		Neo4jGraphBackend backend = new Neo4jGraphBackend(storeDir, false);
+		Label shared = DynamicLabel.label("SHARED"), ml = DynamicLabel.label("ML");
+		boolean keepGroups = new File(storeDir, GroupTracker.FILE).exists();  // step 5 only relabels the accounts that joined or left a group
+		int transactions = Integer.parseInt(readWatermark(storeDir).getProperty("transactions", "-1"));
+		long[][] saved = readSaved(storeDir, transactions);
+		new File(storeDir, SHARED).delete();  // this run changes the store, until saveShared the next run reads every node
+		try (Transaction tx = backend.graphDb.beginTx())
+		{
+			if (saved != null)
+			{
+				backend.restore(saved[0], saved[1]);
+				
+				// the label scan only visits the labelled nodes
+				if (!keepGroups)
+				{
+					ArrayList<Node> labelled = new ArrayList<Node>();
+					for (Node node : GlobalGraphOperations.at(backend.graphDb).getAllNodesWithLabel(ml))
+						labelled.add(node);
+					for (Node node : labelled)
+					{
+						node.removeLabel(ml);
+						node.removeProperty("ML");
+					}
+				}
+				tx.success();
+				return backend;
+			}
+			
+			for (Node node : GlobalGraphOperations.at(backend.graphDb).getAllNodes())
+			{
+				if (node.hasLabel(shared))
+				{
+					for (Relationship relationship : node.getRelationships())
+						relationship.delete();
+					node.delete();
+					continue;
+				}
+				if (!keepGroups && node.hasLabel(ml))
+				{
+					node.removeLabel(ml);
+					node.removeProperty("ML");
+				}
+				backend.handle(node);
+			}
+			
+			// weights of the edges already in the store
+			for (int node = 0; node < backend.nodes.size(); node++)
+				for (Relationship relationship : backend.nodes.get(node).getRelationships(Direction.OUTGOING))
+					backend.weights.addEdge(node, backend.handle(relationship.getEndNode()), Integer.parseInt(relationship.getProperty("weight").toString()));
+			tx.success();
+		}
+		return backend;
+	}
+	
+	
+	// deletes the shared nodes and gives the saved nodes their handles and weights back
+	void restore(long[] saved, long[] sharedIds)
+	{
+		for (long id : sharedIds)
+		{
+			Node node = graphDb.getNodeById(id);
+			for (Relationship relationship : node.getRelationships())
+				relationship.delete();
+			node.delete();
+		}
+		
+		int count = saved.length / 5;
+		weights.ensure(count - 1);
+		for (int node = 0; node < count; node++)
+		{
+			handle(graphDb.getNodeById(saved[node * 5]));
+			weights.sumOfIncoming[node] = (int) (saved[node * 5 + 1] >> 32);
+			weights.sumOfOutgoing[node] = (int) saved[node * 5 + 1];
+			weights.inDegree[node] = (int) (saved[node * 5 + 2] >> 32);
+			weights.outDegree[node] = (int) saved[node * 5 + 2];
+			weights.squaredIncoming[node] = saved[node * 5 + 3];
+			weights.squaredOutgoing[node] = saved[node * 5 + 4];
+		}
+	}
+	
+	
+	// the nodes file as 5 longs per handle (store id, incoming and outgoing sums, degrees, squared incoming, squared outgoing)
+	// and the store ids of the shared nodes, null unless both files are complete and belong to the watermark
+	static long[][] readSaved(String storeDir, int transactions)
+	{
+		try (DataInputStream nodesIn = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(storeDir, NODES))));
+			DataInputStream sharedIn = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(storeDir, SHARED)))))
+		{
+			if (nodesIn.readInt() != transactions || sharedIn.readInt() != transactions)
+				return null;
+			
+			long[] saved = new long[nodesIn.readInt() * 5];
+			for (int i = 0; i < saved.length; i++)
+				saved[i] = nodesIn.readLong();
+			long[] sharedIds = new long[sharedIn.readInt()];
+			for (int i = 0; i < sharedIds.length; i++)
+				sharedIds[i] = sharedIn.readLong();
+			return new long[][] { saved, sharedIds };
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+	
+	
+	/*
+	 * Writes the store id and weights of every node, after step 2 added the pairs of the transactions of the watermark. 
+	 * The shared nodes file of the previous run is removed, open reads every node again until saveShared wrote it. 
+	 */
+	public void saveNodes(String storeDir, int transactions) throws IOException
+	{
+		new File(storeDir, SHARED).delete();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(storeDir, NODES)))))
+		{
+			out.writeInt(transactions);
+			out.writeInt(nodes.size());
+			for (int node = 0; node < nodes.size(); node++)
+			{
+				out.writeLong(nodes.get(node).getId());
+				out.writeLong((long) weights.sumOfIncoming[node] << 32 | (weights.sumOfOutgoing[node] & 0xFFFFFFFFL));
+				out.writeLong((long) weights.inDegree[node] << 32 | (weights.outDegree[node] & 0xFFFFFFFFL));
+				out.writeLong(weights.squaredIncoming[node]);
+				out.writeLong(weights.squaredOutgoing[node]);
+			}
+		}
+		savedNodes = nodes.size();
+		savedTransactions = transactions;
+	}
+	
+	
+	// writes the store ids of the nodes created since saveNodes, the only ones are the shared nodes of step 3.5
+	public void saveShared(String storeDir) throws IOException
+	{
+		if (savedNodes < 0)
+			return;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(storeDir, SHARED)))))
+		{
+			out.writeInt(savedTransactions);
+			out.writeInt(nodes.size() - savedNodes);
+			for (int node = savedNodes; node < nodes.size(); node++)
+				out.writeLong(nodes.get(node).getId());
+		}
+	}
+	
+	
+	// transactions (number already in the store), lastTransactionId (id of the last of them) and the matching 
+	// parameters the store was built with, empty if the store has no watermark
+	public static Properties readWatermark(String storeDir)
+	{
+		Properties watermark = new Properties();
+		try (FileInputStream in = new FileInputStream(new File(storeDir, WATERMARK)))
+		{
+			watermark.load(in);
+			Integer.parseInt(watermark.getProperty("transactions"));
+			Integer.parseInt(watermark.getProperty("lastTransactionId"));
+			return watermark;
+		}
+		catch (Exception e)
+		{
+			return new Properties();
+		}
+	}
+	
+	
+	public static void writeWatermark(String storeDir, int transactions, int lastTransactionId, Properties parameters) throws IOException
+	{
+		Properties watermark = new Properties();
+		watermark.putAll(parameters);
+		watermark.setProperty("transactions", Integer.toString(transactions));
+		watermark.setProperty("lastTransactionId", Integer.toString(lastTransactionId));
+		try (FileOutputStream out = new FileOutputStream(new File(storeDir, WATERMARK)))
+		{
+			watermark.store(out, "transactions of transactions.txt already in the graph and the parameters they were matched with");
+		}
+	}
+	
+	
+	// runs a cypher query and hands its rows to the visitor until it returns false. Every query of the backend 
+	// goes through here. Results are lazy, so the time is recorded once the rows are read and the result is closed
+	public void execute(String query, Map<String, Object> parameters, RowVisitor visitor)
+	{
+		long start = queryTimer.start();
+		ResourceIterator<Map<String, Object>> rows = engine.execute(query, parameters).iterator();
+		try
+		{
+			while (rows.hasNext() && visitor.visit(rows.next()))
+				;
+		}
+		finally
+		{
+			rows.close();
+			queryTimer.stop(query, start);
+		}
+	}
+	
+	
+	public interface RowVisitor
+	{
+		boolean visit(Map<String, Object> row);  // false stops reading the rows
+	}
+	
+	
+	// returns the handle of a node of the store, giving it a new handle if it has not been seen before
+	public int handle(Node node)
+	{
+		int handle = handles.get(node.getId(), -1);
+		if (handle < 0)
+		{
+			handle = nodes.size();
+			nodes.add(node);
+			handles.put(node.getId(), handle);
+			weights.ensure(handle);
+		}
+		return handle;
+	}
+	
+	
+	// account ids are stored as int, as they were before ids became long
+	static Object idValue(long id)
+	{
+		if (id >= Integer.MIN_VALUE && id <= Integer.MAX_VALUE)
+			return (int) id;
+		return id;
+	}
+	
+	
+	private static void removeDirectory(String storeDir) {
+		try{
+			File dir = new File(storeDir);
+			FileUtils.deleteDirectory(dir);
+		}
+		catch (Exception e)
+		{
+		}
+	}
+
+	private static void registerShutdownHook( final GraphDatabaseService graphDb )
+	{
+		// Registers a shutdown hook for the Neo4j instance so that it
+		// shuts down nicely when the VM exits (even if you "Ctrl-C" the
+		// running application).
+		Runtime.getRuntime().addShutdownHook( new Thread()
+		{
+			@Override
+			public void run()
+			{
+				graphDb.shutdown();
+			}
+		} );
+	}
+	
+}
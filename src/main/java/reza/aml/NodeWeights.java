@@ -0,0 +1,108 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Total incoming and outgoing weight, squared weight and number of edges of every node, indexed by node handle. 
+ * 
+ * The graph backends update them whenever an edge is added or its weight changes, so step 3 (balance score) 
+ * reads them from arrays instead of traversing every edge of the graph again, and step 4 (SHRINK) 
+ * reads the norms of the nodes instead of computing them for every pair.
+ * The arrays can be longer than the number of nodes.
+ */
+public class NodeWeights {
+
+	public int[] sumOfIncoming = new int[16];
+	public int[] sumOfOutgoing = new int[16];
+	public int[] inDegree = new int[16];
+	public int[] outDegree = new int[16];
+	public long[] squaredIncoming = new long[16];  // sum of the squared weights of the incoming edges
+	public long[] squaredOutgoing = new long[16];
+	
+	
+	/*
+	 * Balance score B of the nodes 0..nodeCount-1, both parts of the formula:
+	 * the first part is 1 if incoming and outgoing weights are the same and smaller the more they differ,
+	 * the second part puts more emphasis on nodes with higher weight.
+	 * Nodes without incoming or outgoing edges get NaN.
+	 */
+	public double[] balanceScores(int nodeCount)
+	{
+		double[] B = new double[nodeCount];
+		for (int n = 0; n < nodeCount; n++)
+		{
+			double in = sumOfIncoming[n], out = sumOfOutgoing[n];
+			B[n] = (2 * out * in) / (out * out + in * in) * Math.log10(Math.min(out, in));
+		}
+		return B;
+	}
+	
+	
+	// makes room for a new node
+	void ensure(int node)
+	{
+		if (node < sumOfIncoming.length)
+			return;
+		
+		int capacity = Math.max(node + 1, sumOfIncoming.length * 2);
+		sumOfIncoming = Arrays.copyOf(sumOfIncoming, capacity);
+		sumOfOutgoing = Arrays.copyOf(sumOfOutgoing, capacity);
+		inDegree = Arrays.copyOf(inDegree, capacity);
+		outDegree = Arrays.copyOf(outDegree, capacity);
+		squaredIncoming = Arrays.copyOf(squaredIncoming, capacity);
+		squaredOutgoing = Arrays.copyOf(squaredOutgoing, capacity);
+	}
+	
+	
+	// norm of the incoming (or outgoing) weights used by SHRINK, with the self weight w(u,u) = 1 of the spec
+	public double norm(int node, boolean incoming)
+	{
+		return (incoming ? squaredIncoming[node] : squaredOutgoing[node]) + 1;
+	}
+	
+	
+	void addEdge(int from, int to, int weight)
+	{
+		outDegree[from]++;
+		inDegree[to]++;
+		sumOfOutgoing[from] += weight;
+		sumOfIncoming[to] += weight;
+		squaredOutgoing[from] += (long) weight * weight;
+		squaredIncoming[to] += (long) weight * weight;
+	}
+	
+	
+	// the weight of an edge went up by one to weight
+	void incrementEdge(int from, int to, int weight)
+	{
+		sumOfOutgoing[from]++;
+		sumOfIncoming[to]++;
+		squaredOutgoing[from] += 2L * weight - 1;  // weight² - (weight - 1)²
+		squaredIncoming[to] += 2L * weight - 1;
+	}
+	
+}
@@ -0,0 +1,83 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Latency of the graph queries, per query text, from the start of a query until its rows are read and 
+ * its result is closed.
+ * 
+ * Queries are parameterized, so every distinct text is one kind of query (and one cached plan),
+ * and the report has one line per kind of query.
+ */
+public class QueryTimer {
+
+	LinkedHashMap<String, long[]> timings = new LinkedHashMap<String, long[]>();  // query -> {count, total ns, max ns}
+	
+	
+	public long start()
+	{
+		return System.nanoTime();
+	}
+	
+	
+	// records one execution of the query that started at start
+	public void stop(String query, long start)
+	{
+		long elapsed = System.nanoTime() - start;
+		long[] timing = timings.get(query);
+		if (timing == null)
+		{
+			timing = new long[3];
+			timings.put(query, timing);
+		}
+		timing[0]++;
+		timing[1] += elapsed;
+		timing[2] = Math.max(timing[2], elapsed);
+	}
+	
+	
+	public boolean isEmpty()
+	{
+		return timings.isEmpty();
+	}
+	
+	
+	// one line per query: count, total, mean and max latency
+	public String report()
+	{
+		StringBuilder report = new StringBuilder();
+		for (Map.Entry<String, long[]> timing : timings.entrySet())
+		{
+			long[] t = timing.getValue();
+			report.append(String.format("%n%d x %s%n   total (ms): %.1f  mean (ms): %.3f  max (ms): %.3f", 
+					t[0], timing.getKey(), t[1] / 1e6, t[1] / 1e6 / t[0], t[2] / 1e6));
+		}
+		return report.toString();
+	}
+	
+}
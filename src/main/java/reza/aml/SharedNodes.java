@@ -0,0 +1,202 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Step 3.5 (experiment): shared nodes for the intermediates of layering paths, so that step 4 sees the 
+ * intermediates of a path as similar.
+ * 
+ * Every path from a sender (no incoming edges) to a receiver (no outgoing edges) with more than one 
+ * intermediate connects its intermediates, in both directions, to the shared node of its sender and receiver.
+ * The weight of the edges is the sum of the outgoing weights of the intermediate (incoming for the last one).
+ * 
+ * Paths are enumerated by a depth first search over a copy of the outgoing edges taken before any shared node 
+ * is added, instead of a variable length Cypher match. As in the Cypher match a path does not use an edge twice 
+ * and parallel edges make separate paths. A path has at most maxPathLength edges and the search stops after 
+ * maxPaths paths, so it finishes on large graphs. 
+ * One shared node is created per (sender, receiver), and every path adds its own pair of edges for each of its 
+ * intermediates, as the rows of the Cypher match did.
+ */
+public class SharedNodes {
+
+	int maxPathLength;  // edges of the longest path searched
+	long maxPaths;  // the search stops after this many sender to receiver paths, 0 searches none
+	public boolean verbose;  // print every shared node created
+	
+	public long paths;  // sender to receiver paths found by the last build
+	public int sharedNodes;  // shared nodes created by the last build
+	public int sharedEdges;  // pairs of edges between an intermediate and a shared node added by the last build
+	public boolean truncated;  // true if the last build stopped at maxPaths
+	
+	
+	public SharedNodes(int maxPathLength, long maxPaths)
+	{
+		this.maxPathLength = maxPathLength;
+		this.maxPaths = maxPaths;
+	}
+	
+	
+	public void build(final GraphBackend graph)
+	{
+		paths = 0;
+		sharedNodes = 0;
+		sharedEdges = 0;
+		truncated = maxPaths <= 0;
+		
+		// outgoing edges of every node and the weight sums as they are before any shared node
+		final int nodeCount = graph.nodeCount();
+		final int[] start = new int[nodeCount + 1];
+		final int[][] targets = { new int[16] };
+		final boolean[] hasIncoming = new boolean[nodeCount];
+		for (int node = 0; node < nodeCount; node++)
+		{
+			final int from = node;
+			graph.forEachOutEdge(node, new GraphBackend.EdgeVisitor()
+			{
+				public void visit(int to, int weight)
+				{
+					hasIncoming[to] = true;
+					
+					int size = start[from + 1];
+					if (size == targets[0].length)
+						targets[0] = Arrays.copyOf(targets[0], size * 2);
+					targets[0][size] = to;
+					start[from + 1]++;
+				}
+			});
+			if (node + 1 < nodeCount)
+				start[node + 2] = start[node + 1];
+		}
+		int[] neighbours = targets[0];
+		int[] sumOfIncoming = Arrays.copyOf(graph.weights().sumOfIncoming, nodeCount);
+		int[] sumOfOutgoing = Arrays.copyOf(graph.weights().sumOfOutgoing, nodeCount);
+		double[] balanceScores = graph.weights().balanceScores(nodeCount);  // intermediates of step 3 have B >= 0
+		
+		LongIntHashMap endPoints = new LongIntHashMap();  // sender << 32 | receiver -> shared node
+		
+		int[] path = new int[maxPathLength + 1];
+		int[] next = new int[maxPathLength + 1];  // position in the neighbours of path[depth] to continue from
+		boolean[] onPath = new boolean[start[nodeCount]];  // edges (positions in neighbours) of the current path
+		
+		for (int sender = 0; sender < nodeCount && !truncated; sender++)
+		{
+			if (hasIncoming[sender] || start[sender] == start[sender + 1])
+				continue;
+			
+			int depth = 0;
+			path[0] = sender;
+			next[0] = start[sender];
+			while (depth >= 0)
+			{
+				int node = path[depth];
+				if (next[depth] == start[node + 1] || depth == maxPathLength)
+				{
+					depth--;
+					if (depth >= 0)
+						onPath[next[depth] - 1] = false;
+					continue;
+				}
+				
+				int edge = next[depth]++;
+				if (onPath[edge])
+					continue;
+				int to = neighbours[edge];
+				
+				if (start[to] == start[to + 1])
+				{
+					// a receiver, the path has depth nodes between sender and receiver
+					int intermediates = 0;
+					for (int d = 1; d <= depth; d++)
+						if (balanceScores[path[d]] >= 0)
+							intermediates++;
+					
+					// S -> I -> R is not connected, clustering picks up the single intermediate anyway
+					if (intermediates > 1)
+						connect(graph, sender, to, path, depth, intermediates, balanceScores, endPoints, sumOfIncoming, sumOfOutgoing);
+					if (++paths == maxPaths)
+					{
+						truncated = true;
+						for (int d = 0; d < depth; d++)
+							onPath[next[d] - 1] = false;
+						break;
+					}
+					continue;
+				}
+				
+				onPath[edge] = true;
+				depth++;
+				path[depth] = to;
+				next[depth] = start[to];
+			}
+		}
+	}
+	
+	
+	// connects the intermediates in path[1 .. depth] to the shared node of sender and receiver
+	void connect(GraphBackend graph, int sender, int receiver, int[] path, int depth, int intermediates, double[] balanceScores,
+			LongIntHashMap endPoints, int[] sumOfIncoming, int[] sumOfOutgoing)
+	{
+		long endPoint = ((long) sender << 32) | receiver;
+		int sharedNode = endPoints.get(endPoint, -1);
+		if (sharedNode < 0)
+		{
+			sharedNodes++;
+			sharedNode = graph.createNode(1000000000000L + sharedNodes);
+			endPoints.put(endPoint, sharedNode);
+			
+			// add label to node to distinguish it from other nodes. 
+			graph.addLabel(sharedNode, "SHARED");
+			graph.setProperty(sharedNode, "type", "sharedNode");
+			if (verbose)
+				System.out.println("Created shared node " + graph.nodeId(sharedNode) + " for sender " + graph.nodeId(sender) + " and receiver " + graph.nodeId(receiver));
+		}
+		
+		int position = 0;
+		for (int d = 1; d <= depth; d++)
+		{
+			int node = path[d];
+			if (balanceScores[node] < 0)
+				continue;
+			position++;
+			
+			// outgoing weight, incoming for the last intermediate of the path
+			int weight = position == intermediates ? sumOfIncoming[node] : sumOfOutgoing[node];
+			sharedEdges++;
+			
+			HashMap<String, Object> properties = new HashMap<String, Object>();
+			properties.put("type", "sharedRelationship");
+			properties.put("id", 1000000000 + 2 * sharedEdges);
+			graph.addEdge(sharedNode, node, weight, properties);
+			
+			properties = new HashMap<String, Object>();
+			properties.put("type", "sharedRelationship");
+			properties.put("id", 1000000000 + 2 * sharedEdges + 1);
+			graph.addEdge(node, sharedNode, weight, properties);
+		}
+	}
+	
+}
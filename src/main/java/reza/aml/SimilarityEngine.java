@@ -0,0 +1,583 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Step 4 of the algorithm: structural similarity (SHRINK) of the nodes with a high balance score.
+ * 
+ *   σ(u,v) = termOne * termTwo
+ *   termOne = Σ_x w(x,u) w(x,v) / (sqrt(Σ_x w²(x,u) + 1) sqrt(Σ_x w²(x,v) + 1))   over incoming edges
+ *   termTwo = Σ_x w(u,x) w(v,x) / (sqrt(Σ_x w²(u,x) + 1) sqrt(Σ_x w²(v,x) + 1))   over outgoing edges
+ * 
+ * The +1 of the norms is the self weight w(u,u) = 1 of the spec.
+ * 
+ * The weighted adjacency of the candidates is read once into sparse rows (one per direction), with the 
+ * weights of parallel edges summed, which gives the same products as multiplying every pair of edges.
+ * The norms are not computed here, they are kept up to date by the graph (NodeWeights) as edges change.
+ * The nominators are then sparse dot products: the row of u is scattered into a dense array indexed by 
+ * node handle and the rows of the other candidates are multiplied against it.
+ * 
+ * σ(u,v) is 0 unless u and v share an incoming and an outgoing neighbour, so forEachCandidatePair only 
+ * visits those pairs: for every neighbour x of u it walks the candidates that also have x as neighbour 
+ * (the rows transposed into columns), accumulating the nominators over these two-hop paths (wedges).
+ * The cost depends on the number of wedges instead of the number of pairs. For very large candidate sets 
+ * MinHashLsh proposes the pairs that are probably similar, and only these are scored.
+ * 
+ * Rows are scored independently of each other, so with parallelism > 1 they are split into blocks of about 
+ * the same number of wedges, which keeps the few hub accounts with most of the wedges from ending up in one 
+ * task, and the blocks are scored on a fork-join pool. Each block keeps its pairs until all blocks are done.
+ * 
+ * With minSimilarity > 0 pairs that cannot reach it are not scored. Since the weights are positive,
+ *   Σ_x w(x,u) w(x,v) <= min(Σ_x w(x,u) · max_x w(x,v), Σ_x w(x,v) · max_x w(x,u))
+ * which bounds each cosine by the weight sums, the maximum weights and the norms of u and v. A row is 
+ * skipped when even the largest maximum weight and the smallest norm of all candidates leave it below 
+ * minSimilarity, and a pair when its own bound is, before its nominators are accumulated. Pairs that are 
+ * scored but stay below minSimilarity are not visited. The bounds are computed with the same operations as 
+ * the similarity, so rounding can not make them smaller than the similarity: the pairs at or above 
+ * minSimilarity are exactly the ones of the unpruned run.
+ */
+public class SimilarityEngine {
+
+	int[] candidates;  // candidate index -> node handle
+	Rows in, out;  // rows of incoming and outgoing edges, one per candidate
+	
+	public long scoredPairs;  // pairs visited by the last forEachPair or forEachCandidatePair
+	public int parallelism = 1;  // number of threads of forEachCandidatePair, 1 scores on the calling thread
+	public double minSimilarity = 0.0;  // forEachCandidatePair skips pairs whose upper bound is below this and only visits pairs at or above it
+	public long prunedPairs;  // pairs with a common incoming neighbour skipped by the last forEachCandidatePair
+	public long prunedRows;  // rows skipped as a whole by the last forEachCandidatePair
+	
+	// a block of rows has at least this many wedges, smaller blocks cost more to schedule than to score
+	static final long MIN_BLOCK_WORK = 1 << 14;
+	static final int BLOCKS_PER_THREAD = 8;
+	
+	// accumulators of the thread scoring a block, reused by the next block of the same thread
+	final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>()
+	{
+		protected Scratch initialValue()
+		{
+			return new Scratch(candidates.length);
+		}
+	};
+	
+	
+	public SimilarityEngine(GraphBackend graph, List<Integer> candidates)
+	{
+		this.candidates = new int[candidates.size()];
+		for (int i = 0; i < this.candidates.length; i++)
+			this.candidates[i] = candidates.get(i);
+		
+		in = new Rows(graph, this.candidates, true);
+		out = new Rows(graph, this.candidates, false);
+	}
+	
+	
+	public int size()
+	{
+		return candidates.length;
+	}
+	
+	
+	// similarity of candidates i and j
+	public double similarity(int i, int j)
+	{
+		return in.cosine(i, j) * out.cosine(i, j);
+	}
+	
+	
+	// visits every pair i < j in row order (i, then j)
+	public void forEachPair(PairVisitor visitor)
+	{
+		double[] scatterIn = new double[in.nodeCount], scatterOut = new double[out.nodeCount];
+		for (int i = 0; i < candidates.length; i++)
+		{
+			in.scatter(i, scatterIn);
+			out.scatter(i, scatterOut);
+			
+			for (int j = i + 1; j < candidates.length; j++)
+			{
+				double termOne = in.dot(scatterIn, j) / (in.length[i] * in.length[j]);
+				double termTwo = out.dot(scatterOut, j) / (out.length[i] * out.length[j]);
+				visitor.visit(i, j, termOne * termTwo);
+			}
+			
+			in.clear(i, scatterIn);
+			out.clear(i, scatterOut);
+		}
+		scoredPairs = (long) candidates.length * (candidates.length - 1) / 2;
+	}
+	
+	
+	// scores the given pairs i < j (i << 32 | j, ascending) and visits the ones with a similarity above 0 (and at least minSimilarity), in row order
+	public void forEachPair(long[] pairs, PairVisitor visitor)
+	{
+		double[] scatterIn = new double[in.nodeCount], scatterOut = new double[out.nodeCount];
+		scoredPairs = 0;
+		
+		int p = 0;
+		while (p < pairs.length)
+		{
+			int i = (int) (pairs[p] >>> 32);
+			in.scatter(i, scatterIn);
+			out.scatter(i, scatterOut);
+			
+			for (; p < pairs.length && (int) (pairs[p] >>> 32) == i; p++)
+			{
+				int j = (int) pairs[p];
+				double dotIn = in.dot(scatterIn, j), dotOut = out.dot(scatterOut, j);
+				if (dotIn == 0.0 || dotOut == 0.0)
+					continue;
+				
+				double termOne = dotIn / (in.length[i] * in.length[j]);
+				double termTwo = dotOut / (out.length[i] * out.length[j]);
+				if (termOne * termTwo < minSimilarity)
+					continue;
+				visitor.visit(i, j, termOne * termTwo);
+				scoredPairs++;
+			}
+			
+			in.clear(i, scatterIn);
+			out.clear(i, scatterOut);
+		}
+	}
+	
+	
+	// visits the pairs i < j that share an incoming and an outgoing neighbour, in row order. The other pairs have similarity 0
+	public void forEachCandidatePair(PairVisitor visitor)
+	{
+		in.transpose();
+		out.transpose();
+		
+		if (parallelism > 1)
+		{
+			forEachCandidatePairParallel(visitor);
+			return;
+		}
+		
+		Scratch scratch = new Scratch(candidates.length);
+		scoredPairs = scoreRows(0, candidates.length, scratch, visitor);
+		prunedPairs = scratch.prunedPairs;
+		prunedRows = scratch.prunedRows;
+	}
+	
+	
+	// scores blocks of rows on a fork-join pool, every block collects its pairs on its own and the blocks 
+	// are visited in row order afterwards, so the visitor sees the same pairs in the same order as with one thread
+	void forEachCandidatePairParallel(PairVisitor visitor)
+	{
+		int[] blockStart = blocks();
+		Block[] blocks = new Block[blockStart.length - 1];
+		if (blocks.length == 1)
+		{
+			Scratch scratch = new Scratch(candidates.length);
+			scoredPairs = scoreRows(0, candidates.length, scratch, visitor);
+			prunedPairs = scratch.prunedPairs;
+			prunedRows = scratch.prunedRows;
+			return;
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			pool.invoke(new ScoreBlocks(blockStart, blocks, 0, blocks.length));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		scoredPairs = 0;
+		prunedPairs = 0;
+		prunedRows = 0;
+		for (Block block : blocks)
+		{
+			for (int p = 0; p < block.size; p++)
+				visitor.visit(block.rows[p], block.columns[p], block.values[p]);
+			scoredPairs += block.size;
+			prunedPairs += block.prunedPairs;
+			prunedRows += block.prunedRows;
+		}
+	}
+	
+	
+	// splits the rows into blocks of about the same number of wedges. A row with more wedges than a block (a hub) gets a block of its own
+	int[] blocks()
+	{
+		long[] work = new long[candidates.length];
+		long total = 0;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			work[i] = in.wedges(i) + out.wedges(i);
+			total += work[i];
+		}
+		long blockWork = Math.max(MIN_BLOCK_WORK, total / (parallelism * BLOCKS_PER_THREAD));
+		
+		int[] blockStart = new int[candidates.length + 1];
+		int count = 0;
+		long size = 0;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			if (size > 0 && size + work[i] > blockWork)
+			{
+				blockStart[++count] = i;
+				size = 0;
+			}
+			size += work[i];
+		}
+		blockStart[++count] = candidates.length;
+		return Arrays.copyOf(blockStart, count + 1);
+	}
+	
+	
+	// scores the rows from .. to, returns the number of pairs visited
+	long scoreRows(int from, int to, Scratch scratch, PairVisitor visitor)
+	{
+		double[] dotIn = scratch.dotIn, dotOut = scratch.dotOut;
+		int[] stamp = scratch.stamp, reached = scratch.reached;
+		long scored = 0;
+		
+		for (int i = from; i < to; i++)
+		{
+			if (minSimilarity > 0 && in.rowBound(i) * out.rowBound(i) < minSimilarity)
+			{
+				scratch.prunedRows++;
+				continue;
+			}
+			
+			// candidates j > i with a common incoming neighbour
+			int count = 0;
+			for (int k = in.start[i]; k < in.start[i + 1]; k++)
+			{
+				int x = in.neighbours[k];
+				for (int c = in.columnStart[x + 1] - 1; c >= in.columnStart[x]; c--)
+				{
+					int j = in.columnRows[c];
+					if (j <= i)
+						break;  // rows of a column are in ascending order
+					
+					if (stamp[j] != i + 1)
+					{
+						if (stamp[j] == -(i + 1))
+							continue;  // pruned
+						if (minSimilarity > 0 && in.bound(i, j) * out.bound(i, j) < minSimilarity)
+						{
+							stamp[j] = -(i + 1);
+							scratch.prunedPairs++;
+							continue;
+						}
+						
+						stamp[j] = i + 1;
+						dotIn[j] = 0.0;
+						dotOut[j] = 0.0;
+						reached[count++] = j;
+					}
+					dotIn[j] += in.weights[k] * in.columnWeights[c];
+				}
+			}
+			
+			// and a common outgoing neighbour
+			for (int k = out.start[i]; k < out.start[i + 1]; k++)
+			{
+				int x = out.neighbours[k];
+				for (int c = out.columnStart[x + 1] - 1; c >= out.columnStart[x]; c--)
+				{
+					int j = out.columnRows[c];
+					if (j <= i)
+						break;
+					if (stamp[j] == i + 1)
+						dotOut[j] += out.weights[k] * out.columnWeights[c];
+				}
+			}
+			
+			Arrays.sort(reached, 0, count);
+			for (int r = 0; r < count; r++)
+			{
+				int j = reached[r];
+				if (dotIn[j] == 0.0 || dotOut[j] == 0.0)
+					continue;
+				
+				double termOne = dotIn[j] / (in.length[i] * in.length[j]);
+				double termTwo = dotOut[j] / (out.length[i] * out.length[j]);
+				if (termOne * termTwo < minSimilarity)
+					continue;
+				visitor.visit(i, j, termOne * termTwo);
+				scored++;
+			}
+		}
+		return scored;
+	}
+	
+	
+	/*
+	 * Per thread accumulators of scoreRows, indexed by candidate.
+	 * stamp[j] == i + 1 marks j as reached from row i (-(i + 1) as pruned), every row is scored once so the arrays never have to be cleared.
+	 */
+	static class Scratch
+	{
+		double[] dotIn, dotOut;
+		int[] stamp;
+		int[] reached;
+		long prunedPairs, prunedRows;
+		
+		Scratch(int size)
+		{
+			dotIn = new double[size];
+			dotOut = new double[size];
+			stamp = new int[size];
+			reached = new int[size];
+		}
+	}
+	
+	
+	// pairs scored by one block, in row order
+	static class Block implements PairVisitor
+	{
+		int size;
+		long prunedPairs, prunedRows;
+		int[] rows = new int[16], columns = new int[16];
+		double[] values = new double[16];
+		
+		public void visit(int i, int j, double similarity)
+		{
+			if (size == rows.length)
+			{
+				rows = Arrays.copyOf(rows, size * 2);
+				columns = Arrays.copyOf(columns, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			rows[size] = i;
+			columns[size] = j;
+			values[size++] = similarity;
+		}
+	}
+	
+	
+	// splits the blocks in halves until one is left, idle threads steal the other halves
+	class ScoreBlocks extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		int[] blockStart;
+		Block[] blocks;
+		int from, to;
+		
+		ScoreBlocks(int[] blockStart, Block[] blocks, int from, int to)
+		{
+			this.blockStart = blockStart;
+			this.blocks = blocks;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				Block block = new Block();
+				Scratch s = scratch.get();
+				long prunedPairs = s.prunedPairs, prunedRows = s.prunedRows;
+				scoreRows(blockStart[from], blockStart[from + 1], s, block);
+				block.prunedPairs = s.prunedPairs - prunedPairs;
+				block.prunedRows = s.prunedRows - prunedRows;
+				blocks[from] = block;
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new ScoreBlocks(blockStart, blocks, from, middle), new ScoreBlocks(blockStart, blocks, middle, to));
+		}
+	}
+	
+	
+	public interface PairVisitor
+	{
+		void visit(int i, int j, double similarity);
+	}
+	
+	
+	/*
+	 * Sparse rows of one direction: the neighbours x of candidate i are neighbours[start[i] .. start[i+1])
+	 * with the summed weights of the edges between them. 
+	 * norm[i] is the sum of the squared weights of the edges (each edge on its own) plus the self weight.
+	 */
+	static class Rows
+	{
+		int nodeCount;
+		int[] start;
+		int[] neighbours;
+		double[] weights;
+		double[] norm;
+		double[] length;  // square root of the norm
+		double[] sum, max;  // sum and maximum of the weights of each row
+		double maxWeight, minLength;  // over all rows
+		
+		// the same entries by neighbour: rows (candidates) having neighbour x are columnRows[columnStart[x] .. columnStart[x+1]), ascending
+		int[] columnStart;
+		int[] columnRows;
+		double[] columnWeights;
+		
+		Rows(GraphBackend graph, int[] candidates, boolean incoming)
+		{
+			nodeCount = graph.nodeCount();
+			start = new int[candidates.length + 1];
+			neighbours = new int[16];
+			weights = new double[16];
+			norm = new double[candidates.length];
+			NodeWeights nodeWeights = graph.weights();
+			
+			final int[] position = new int[nodeCount];  // neighbour -> position in the current row + 1, 0 if not in it
+			final int[] size = new int[1];
+			for (int i = 0; i < candidates.length; i++)
+			{
+				final int rowStart = size[0];
+				GraphBackend.EdgeVisitor collect = new GraphBackend.EdgeVisitor()
+				{
+					public void visit(int x, int weight)
+					{
+						if (position[x] > 0)
+						{
+							weights[position[x] - 1] += weight;
+							return;
+						}
+						if (size[0] == neighbours.length)
+						{
+							neighbours = Arrays.copyOf(neighbours, size[0] * 2);
+							weights = Arrays.copyOf(weights, size[0] * 2);
+						}
+						neighbours[size[0]] = x;
+						weights[size[0]] = weight;
+						position[x] = ++size[0];
+					}
+				};
+				
+				if (incoming)
+					graph.forEachInEdge(candidates[i], collect);
+				else
+					graph.forEachOutEdge(candidates[i], collect);
+				
+				norm[i] = nodeWeights.norm(candidates[i], incoming);
+				for (int k = rowStart; k < size[0]; k++)
+					position[neighbours[k]] = 0;
+				start[i + 1] = size[0];
+			}
+			
+			length = new double[candidates.length];
+			sum = new double[candidates.length];
+			max = new double[candidates.length];
+			minLength = Double.MAX_VALUE;
+			for (int i = 0; i < candidates.length; i++)
+			{
+				length[i] = Math.sqrt(norm[i]);
+				for (int k = start[i]; k < start[i + 1]; k++)
+				{
+					sum[i] += weights[k];
+					max[i] = Math.max(max[i], weights[k]);
+				}
+				maxWeight = Math.max(maxWeight, max[i]);
+				minLength = Math.min(minLength, length[i]);
+			}
+		}
+		
+		// counting sort of the entries by neighbour, rows are visited in order so every column is ascending
+		void transpose()
+		{
+			if (columnStart != null)
+				return;
+			
+			int entries = start[start.length - 1];
+			columnStart = new int[nodeCount + 1];
+			for (int k = 0; k < entries; k++)
+				columnStart[neighbours[k] + 1]++;
+			for (int x = 0; x < nodeCount; x++)
+				columnStart[x + 1] += columnStart[x];
+			
+			int[] next = Arrays.copyOf(columnStart, nodeCount);
+			columnRows = new int[entries];
+			columnWeights = new double[entries];
+			for (int i = 0; i + 1 < start.length; i++)
+				for (int k = start[i]; k < start[i + 1]; k++)
+				{
+					int c = next[neighbours[k]]++;
+					columnRows[c] = i;
+					columnWeights[c] = weights[k];
+				}
+		}
+		
+		void scatter(int i, double[] dense)
+		{
+			for (int k = start[i]; k < start[i + 1]; k++)
+				dense[neighbours[k]] = weights[k];
+		}
+		
+		void clear(int i, double[] dense)
+		{
+			for (int k = start[i]; k < start[i + 1]; k++)
+				dense[neighbours[k]] = 0.0;
+		}
+		
+		// dot product of row j with a scattered row
+		double dot(double[] dense, int j)
+		{
+			double nominator = 0.0;
+			for (int k = start[j]; k < start[j + 1]; k++)
+				nominator += dense[neighbours[k]] * weights[k];
+			return nominator;
+		}
+		
+		// two-hop paths from row i through its neighbours, an estimate of the cost of scoring row i
+		long wedges(int i)
+		{
+			long wedges = 0;
+			for (int k = start[i]; k < start[i + 1]; k++)
+				wedges += columnStart[neighbours[k] + 1] - columnStart[neighbours[k]];
+			return wedges;
+		}
+		
+		// upper bound of the cosine of rows i and j
+		double bound(int i, int j)
+		{
+			return Math.min(sum[i] * max[j], sum[j] * max[i]) / (length[i] * length[j]);
+		}
+		
+		// upper bound of the cosine of row i and any other row
+		double rowBound(int i)
+		{
+			return sum[i] * maxWeight / (length[i] * minLength);
+		}
+		
+		double cosine(int i, int j)
+		{
+			double[] dense = new double[nodeCount];
+			scatter(i, dense);
+			return dot(dense, j) / (length[i] * length[j]);
+		}
+	}
+	
+}
@@ -0,0 +1,98 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+
+/*
+ * Symmetric similarity matrix of the step 4 candidates that only keeps the non-zero entries of the upper triangle.
+ * 
+ * Entries (i, j, value) with i < j are appended in row order into primitive arrays and read back in that order. 
+ * Missing entries are 0.
+ */
+public class SparseSimilarityMatrix {
+
+	int size;  // number of candidates (rows and columns)
+	int entries;
+	int[] rows = new int[16];
+	int[] columns = new int[16];
+	double[] values = new double[16];
+	
+	
+	public SparseSimilarityMatrix(int size)
+	{
+		this.size = size;
+	}
+	
+	
+	// value of the pair i < j, pairs have to be added in row order (i, then j)
+	public void add(int i, int j, double value)
+	{
+		if (i >= j || (entries > 0 && (i < rows[entries - 1] || (i == rows[entries - 1] && j <= columns[entries - 1]))))
+			throw new IllegalArgumentException("Pair " + i + " " + j + " is not after the last pair of the upper triangle");
+		
+		if (entries == rows.length)
+		{
+			rows = Arrays.copyOf(rows, entries * 2);
+			columns = Arrays.copyOf(columns, entries * 2);
+			values = Arrays.copyOf(values, entries * 2);
+		}
+		rows[entries] = i;
+		columns[entries] = j;
+		values[entries] = value;
+		entries++;
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	
+	public int entries()
+	{
+		return entries;
+	}
+	
+	
+	public int row(int entry)
+	{
+		return rows[entry];
+	}
+	
+	
+	public int column(int entry)
+	{
+		return columns[entry];
+	}
+	
+	
+	public double value(int entry)
+	{
+		return values[entry];
+	}
+	
+}
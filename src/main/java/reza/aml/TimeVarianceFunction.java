@@ -0,0 +1,128 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+/*
+ * Time variance function used by step 1 when matching an incoming transaction u->v 
+ * with an outgoing transaction v->w.
+ * 
+ * The function is applied to the time difference (outgoing time - incoming time). 
+ * Only outgoing transactions inside [lowerBound, upperBound] are considered, 
+ * and the one with the highest score is matched. Score of 0 rejects the pair.
+ */
+public abstract class TimeVarianceFunction {
+
+	double lowerBound;
+	double upperBound;
+	
+	
+	TimeVarianceFunction(double lowerBound, double upperBound)
+	{
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+	}
+	
+	
+	public abstract double score(int timeDifference);
+	
+	
+	public boolean inWindow(int timeDifference)
+	{
+		return timeDifference >= lowerBound && timeDifference <= upperBound;
+	}
+	
+	
+	// outgoing transaction can happen before or after the incoming one, at most allowedTimeDifference apart 
+	public static TimeVarianceFunction absolute(double allowedTimeDifference)
+	{
+		return new TimeVarianceFunction(-allowedTimeDifference, allowedTimeDifference) 
+		{
+			public double score(int timeDifference)
+			{
+				return inWindow(timeDifference) ? 1.0 : 0.0;
+			}
+			
+			public String toString()
+			{
+				return "absolute(" + upperBound + ")";
+			}
+		};
+	}
+	
+	
+	// outgoing transaction happens after the incoming one, at most allowedTimeDifference later
+	public static TimeVarianceFunction directional(double allowedTimeDifference)
+	{
+		return new TimeVarianceFunction(0, allowedTimeDifference) 
+		{
+			public double score(int timeDifference)
+			{
+				return inWindow(timeDifference) ? 1.0 : 0.0;
+			}
+			
+			public String toString()
+			{
+				return "directional(" + upperBound + ")";
+			}
+		};
+	}
+	
+	
+	// same window as directional, but the score halves every halfLife so the closest outgoing transaction is matched 
+	public static TimeVarianceFunction decaying(double allowedTimeDifference, final double halfLife)
+	{
+		// a half-life of 0 or less scores the pairs NaN or infinity
+		if (!(halfLife > 0))
+			throw new IllegalArgumentException("Half-life of the decaying time variance function must be positive: " + halfLife);
+		
+		return new TimeVarianceFunction(0, allowedTimeDifference) 
+		{
+			public double score(int timeDifference)
+			{
+				if (!inWindow(timeDifference))
+					return 0.0;
+				return Math.pow(0.5, timeDifference / halfLife);
+			}
+			
+			public String toString()
+			{
+				return "decaying(" + upperBound + ", half-life " + halfLife + ")";
+			}
+		};
+	}
+	
+	
+	public static TimeVarianceFunction forName(String name, double allowedTimeDifference, double halfLife)
+	{
+		if (name.equalsIgnoreCase("absolute"))
+			return absolute(allowedTimeDifference);
+		if (name.equalsIgnoreCase("directional"))
+			return directional(allowedTimeDifference);
+		if (name.equalsIgnoreCase("decaying"))
+			return decaying(allowedTimeDifference, halfLife);
+		
+		throw new IllegalArgumentException("Unknown time variance function: " + name);
+	}
+}
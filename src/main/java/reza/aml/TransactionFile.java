@@ -0,0 +1,279 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Binary column oriented copy of nodes.txt and transactions.txt (transactions.bin), so the text is only 
+ * parsed once.
+ * 
+ * Layout, little endian ints:
+ *   header   MAGIC, VERSION, rows, accounts, nodes (accounts of nodes.txt), COLUMNS, 
+ *            then min and max of every column, 
+ *            then size and last modified time (longs, low int first) of nodes.txt and transactions.txt
+ *   accounts account number of every ordinal, in the order of the AccountRegistry
+ *   columns  id, sender, receiver, amount, time, rows ints each, in the order of transactions.txt. 
+ *            Senders and receivers are ordinals
+ * 
+ * Reading maps the file and copies every column into the arrays of a TransactionStore with one bulk get, 
+ * and rebuilds the registry from the accounts, so the ordinals are the same as when the text was parsed.
+ * The columns are copied rather than used from the mapping, since the matchers and the graph read the 
+ * int[] columns of the store directly.
+ * The file is only used while both text files still have the size and time recorded in the header, and 
+ * its length matches the rows and accounts of the header.
+ */
+public class TransactionFile {
+
+	static final int MAGIC = 0x544C4D41;  // "AMLT"
+	static final int VERSION = 2;
+	static final int COLUMNS = 5;  // id, sender, receiver, amount, time
+	static final int SOURCES = 2;  // nodes.txt, transactions.txt
+	static final int HEADER = 6 + 2 * COLUMNS + 4 * SOURCES;  // ints
+	
+	public static final int ID = 0, SENDER = 1, RECEIVER = 2, AMOUNT = 3, TIME = 4;  // columns
+	
+	int rows;
+	int nodes;  // the first nodes accounts are the accounts of nodes.txt
+	int[] min = new int[COLUMNS];
+	int[] max = new int[COLUMNS];
+	TransactionStore transactions;
+	
+	
+	public int rows()
+	{
+		return rows;
+	}
+	
+	public int nodes()
+	{
+		return nodes;
+	}
+	
+	// smallest value of a column (ID .. TIME), Integer.MAX_VALUE if the file has no rows
+	public int min(int column)
+	{
+		return min[column];
+	}
+	
+	// largest value of a column, Integer.MIN_VALUE if the file has no rows
+	public int max(int column)
+	{
+		return max[column];
+	}
+	
+	public TransactionStore transactions()
+	{
+		return transactions;
+	}
+	
+	
+	// true if the file exists, has the length of the rows and accounts of its header, 
+	// and the nodes and transactions sources have the size and last modified time of its header
+	public static boolean isCurrent(String path, String nodesPath, String transactionsPath)
+	{
+		if (!new File(path).exists())
+			return false;
+		
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"))
+		{
+			FileChannel channel = file.getChannel();
+			if (channel.size() < 4L * HEADER)
+				return false;
+			IntBuffer header = map(channel, 0, HEADER);
+			if (header.get(0) != MAGIC || header.get(1) != VERSION || header.get(5) != COLUMNS)
+				return false;
+			if (channel.size() != length(header.get(2), header.get(3)))
+				return false;
+			
+			int position = 6 + 2 * COLUMNS;
+			for (String source : new String[] { nodesPath, transactionsPath })
+			{
+				File sourceFile = new File(source);
+				if (!sourceFile.exists() || getLong(header, position) != sourceFile.length() || getLong(header, position + 2) != sourceFile.lastModified())
+					return false;
+				position += 4;
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+	
+	
+	// nodes is the number of accounts of nodes.txt, the first accounts of the registry of the store. 
+	// The size and time of nodesPath and transactionsPath (the text the store was read from) go into the header
+	public static void write(String path, TransactionStore transactions, int nodes, String nodesPath, String transactionsPath) throws IOException
+	{
+		int rows = transactions.size();
+		AccountRegistry accounts = transactions.accounts();
+		int[][] columns = { transactions.id, transactions.sender, transactions.receiver, transactions.amount, transactions.time };
+		
+		IntBuffer header = IntBuffer.allocate(HEADER);
+		header.put(MAGIC).put(VERSION).put(rows).put(accounts.size()).put(nodes).put(COLUMNS);
+		for (int[] column : columns)
+		{
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = 0; i < rows; i++)
+			{
+				min = Math.min(min, column[i]);
+				max = Math.max(max, column[i]);
+			}
+			header.put(min).put(max);
+		}
+		for (String source : new String[] { nodesPath, transactionsPath })
+		{
+			File sourceFile = new File(source);
+			putLong(header, sourceFile.length());
+			putLong(header, sourceFile.lastModified());
+		}
+		
+		new File(path).delete();
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw"))
+		{
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			write(channel, buffer, header.array(), HEADER);
+			write(channel, buffer, accounts.accounts, accounts.size());
+			for (int[] column : columns)
+				write(channel, buffer, column, rows);
+			flush(channel, buffer);
+		}
+	}
+	
+	
+	static void write(FileChannel channel, ByteBuffer buffer, int[] values, int length) throws IOException
+	{
+		for (int i = 0; i < length; )
+		{
+			if (buffer.remaining() < 4)
+				flush(channel, buffer);
+			int count = Math.min(length - i, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, i, count);
+			buffer.position(buffer.position() + 4 * count);
+			i += count;
+		}
+	}
+	
+	
+	static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	
+	public static TransactionFile read(String path) throws IOException
+	{
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"))
+		{
+			FileChannel channel = file.getChannel();
+			IntBuffer header = channel.size() < 4L * HEADER ? null : map(channel, 0, HEADER);
+			if (header == null || header.get(0) != MAGIC || header.get(1) != VERSION || header.get(5) != COLUMNS)
+				throw new IOException(path + " is not a transaction file of version " + VERSION);
+			
+			TransactionFile transactionFile = new TransactionFile();
+			int rows = transactionFile.rows = header.get(2);
+			int accountCount = header.get(3);
+			transactionFile.nodes = header.get(4);
+			for (int c = 0; c < COLUMNS; c++)
+			{
+				transactionFile.min[c] = header.get(6 + 2 * c);
+				transactionFile.max[c] = header.get(7 + 2 * c);
+			}
+			if (channel.size() != length(rows, accountCount))
+				throw new IOException(path + " is truncated");
+			
+			long position = HEADER;
+			AccountRegistry accounts = new AccountRegistry();
+			IntBuffer accountNumbers = map(channel, position, accountCount);
+			for (int ordinal = 0; ordinal < accountCount; ordinal++)
+				accounts.intern(accountNumbers.get(ordinal));
+			position += accountCount;
+			
+			TransactionStore transactions = new TransactionStore(accounts, rows);
+			for (int[] column : new int[][] { transactions.id, transactions.sender, transactions.receiver, transactions.amount, transactions.time })
+			{
+				map(channel, position, rows).get(column, 0, rows);
+				position += rows;
+			}
+			transactions.size = rows;
+			transactionFile.transactions = transactions;
+			return transactionFile;
+		}
+	}
+	
+	
+	// bytes of a file with rows transactions and accountCount accounts
+	static long length(int rows, int accountCount)
+	{
+		return 4L * (HEADER + (long) accountCount + (long) COLUMNS * rows);
+	}
+	
+	
+	static void putLong(IntBuffer buffer, long value)
+	{
+		buffer.put((int) value).put((int) (value >>> 32));
+	}
+	
+	
+	static long getLong(IntBuffer buffer, int index)
+	{
+		return (buffer.get(index) & 0xFFFFFFFFL) | ((long) buffer.get(index + 1) << 32);
+	}
+	
+	
+	// length ints of the file from the int at position
+	static IntBuffer map(FileChannel channel, long position, int length) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, 4 * position, 4L * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+	
+	
+	// converts the text files written by DataGenerator: [nodes.txt [transactions.txt [transactions.bin]]]
+	public static void main(String[] args) throws IOException
+	{
+		String nodesPath = args.length > 0 ? args[0] : "nodes.txt";
+		String transactionsPath = args.length > 1 ? args[1] : "transactions.txt";
+		String path = args.length > 2 ? args[2] : "transactions.bin";
+		
+		AccountRegistry accounts = Input.readAccounts(nodesPath, Runtime.getRuntime().availableProcessors());
+		int nodes = accounts.size();
+		TransactionStore transactions = Input.readTransactionStore(transactionsPath, accounts, Runtime.getRuntime().availableProcessors());
+		write(path, transactions, nodes, nodesPath, transactionsPath);
+		System.out.println("Wrote " + transactions.size() + " transactions and " + accounts.size() + " accounts to " + path);
+	}
+	
+}
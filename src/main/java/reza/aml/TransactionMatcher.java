@@ -0,0 +1,366 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Step 1 of the algorithm: finds matching transactions u->v, v->w.
+ * 
+ * Transactions are indexed by their intermediate account v, so each incoming transaction u->v is only 
+ * compared with the transactions sent by v, instead of comparing every transaction with every other one.
+ * The result is the same as the original nested loop: u->v is matched with the first (in file order) 
+ * unused transaction v->w that satisfies the amount and time conditions.
+ * 
+ * When a time variance function is given, the transactions of every account are sorted by time 
+ * and a window is swept over them with two pointers, so only transactions inside the window are compared.
+ * 
+ * Intermediate accounts are matched independently of each other, so with parallelism > 1 they are 
+ * split over a fork-join pool. The pairs are the same as with one thread. For the same reason, the pairs 
+ * of transactions appended after an earlier match only need the accounts those transactions touch.
+ */
+public class TransactionMatcher {
+
+	double amountThreshold;  // incoming transaction should be at least this amount
+	double allowedAmountDifference; // incoming and outgoing amounts can be different as much as this amount
+	double allowedTimeDifference;  // incoming and outgoing transactions can be apart as much as this value
+	TimeVarianceFunction timeVariance; // null for the simplified time check
+	
+	public int parallelism = 1;  // number of threads, 1 matches on the calling thread
+	
+	// intermediate accounts with fewer transactions than this are matched without forking again 
+	static final int PARTITION_SIZE = 4096;
+	
+	
+	public TransactionMatcher(double amountThreshold, double allowedAmountDifference, double allowedTimeDifference)
+	{
+		this.amountThreshold = amountThreshold;
+		this.allowedAmountDifference = allowedAmountDifference;
+		this.allowedTimeDifference = allowedTimeDifference;
+	}
+	
+	
+	// sliding window matching
+	public TransactionMatcher(double amountThreshold, double allowedAmountDifference, TimeVarianceFunction timeVariance)
+	{
+		this.amountThreshold = amountThreshold;
+		this.allowedAmountDifference = allowedAmountDifference;
+		this.timeVariance = timeVariance;
+	}
+	
+	
+	// returns the matching pairs <u->v, v->w> in the order of the incoming transactions 
+	// the pairs are FinancialTransaction views of the store
+	public LinkedHashMap<FinancialTransaction, FinancialTransaction> match(TransactionStore transactions)
+	{
+		return match(transactions, 0);
+	}
+	
+	
+	// returns only the pairs of match(transactions) with a transaction at index from or later, 
+	// matching only the intermediate accounts that receive or send one of those transactions
+	public LinkedHashMap<FinancialTransaction, FinancialTransaction> match(TransactionStore transactions, int from)
+	{
+		Partitions partitions = new Partitions(transactions);
+		if (from > 0)
+			partitions.keepAccountsFrom(from);
+		
+		if (parallelism > 1)
+		{
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try
+			{
+				pool.invoke(new MatchPartitions(partitions, 0, partitions.accounts.length));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+		{
+			for (int p = 0; p < partitions.accounts.length; p++)
+				matchAccount(partitions, partitions.accounts[p]);
+		}
+		
+		// merge the partitions in the order of the incoming transactions
+		LinkedHashMap<FinancialTransaction, FinancialTransaction> pairs = new LinkedHashMap<FinancialTransaction, FinancialTransaction>();
+		for (int i = 0; i < partitions.matchedWith.length; i++)
+			if (partitions.matchedWith[i] >= 0 && (i >= from || partitions.matchedWith[i] >= from))
+				pairs.put(transactions.get(i), transactions.get(partitions.matchedWith[i]));
+		
+		return pairs;
+	}
+	
+	
+	// matches the incoming transactions u->v of one intermediate account v with its outgoing transactions v->w
+	void matchAccount(Partitions partitions, int account)
+	{
+		if (timeVariance != null)
+		{
+			matchSlidingWindow(partitions, account);
+			return;
+		}
+		
+		TransactionStore transactions = partitions.transactions;
+		int[] received = partitions.received, sent = partitions.sent;
+		boolean[] used = partitions.used;
+		
+		for (int r = partitions.receivedStart[account]; r < partitions.receivedStart[account + 1]; r++)
+		{
+			int i = received[r];
+			
+			// condition 1 of trx matching algorithm 
+			if (transactions.amount(i) < amountThreshold)
+				continue;
+			
+			for (int s = partitions.sentStart[account]; s < partitions.sentStart[account + 1]; s++)
+			{
+				int j = sent[s];
+				if (j == i || used[j])
+					continue;
+				
+				if (matches(transactions, i, j))
+				{
+					used[j] = true;
+					partitions.matchedWith[i] = j;
+					break;  // only one 
+				}
+			}
+		}
+	}
+	
+	
+	void matchSlidingWindow(Partitions partitions, int account)
+	{
+		TransactionStore transactions = partitions.transactions;
+		int[] received = partitions.received, sent = partitions.sent;
+		boolean[] used = partitions.used;
+		
+		// sort both sides by time (ties stay in file order)
+		int receivedFrom = partitions.receivedStart[account], receivedTo = partitions.receivedStart[account + 1];
+		int sentFrom = partitions.sentStart[account], sentTo = partitions.sentStart[account + 1];
+		sortByTime(transactions, received, receivedFrom, receivedTo);
+		sortByTime(transactions, sent, sentFrom, sentTo);
+		
+		int start = sentFrom;  // first outgoing transaction that can still be in the window
+		for (int r = receivedFrom; r < receivedTo; r++)
+		{
+			int i = received[r];
+			
+			// condition 1 of trx matching algorithm 
+			if (transactions.amount(i) < amountThreshold)
+				continue;
+			
+			// incoming transactions are in time order, so the window only moves forward
+			int time = transactions.time(i);
+			while (start < sentTo && (used[sent[start]] || transactions.time(sent[start]) - time < timeVariance.lowerBound))
+				start++;
+			
+			int best = -1;
+			double bestScore = 0.0;
+			for (int s = start; s < sentTo; s++)
+			{
+				int j = sent[s];
+				int timeDifference = transactions.time(j) - time;
+				if (timeDifference > timeVariance.upperBound)
+					break;
+				
+				if (j == i || used[j])
+					continue;
+				
+				if (Math.abs(transactions.amount(i) - transactions.amount(j)) <= allowedAmountDifference)
+				{
+					double score = timeVariance.score(timeDifference);
+					if (score > bestScore)
+					{
+						best = j;
+						bestScore = score;
+					}
+				}
+			}
+			
+			if (best >= 0)
+			{
+				used[best] = true;
+				partitions.matchedWith[i] = best;
+			}
+		}
+	}
+	
+	
+	// stable sort of a range of transaction indexes by time
+	static void sortByTime(TransactionStore transactions, int[] indexes, int from, int to)
+	{
+		long[] keys = new long[to - from];
+		for (int k = from; k < to; k++)
+			keys[k - from] = ((long) transactions.time(indexes[k]) << 32) | indexes[k];
+		Arrays.sort(keys);
+		for (int k = from; k < to; k++)
+			indexes[k] = (int) keys[k - from];
+	}
+	
+	
+	/*
+	 * Transactions grouped by intermediate account (ordinal), in file order:
+	 * received[receivedStart[v] .. receivedStart[v+1]) are the transactions u->v,
+	 * sent[sentStart[v] .. sentStart[v+1]) are the transactions v->w.
+	 * 
+	 * Every transaction belongs to exactly one partition on each side, so partitions share the
+	 * used and matchedWith arrays without locking.
+	 */
+	static class Partitions
+	{
+		TransactionStore transactions;
+		int[] sentStart, sent;
+		int[] receivedStart, received;
+		int[] accounts;  // intermediate accounts that both receive and send
+		
+		boolean[] used;  // transactions already used as the outgoing side of a pair
+		int[] matchedWith;  // outgoing transaction of each incoming transaction, -1 if none
+		
+		Partitions(TransactionStore transactions)
+		{
+			this.transactions = transactions;
+			int accountCount = transactions.accounts().size();
+			
+			sentStart = new int[accountCount + 1];
+			receivedStart = new int[accountCount + 1];
+			sent = index(transactions, true, sentStart);
+			received = index(transactions, false, receivedStart);
+			
+			int count = 0;
+			accounts = new int[accountCount];
+			for (int v = 0; v < accountCount; v++)
+				if (sentStart[v + 1] > sentStart[v] && receivedStart[v + 1] > receivedStart[v])
+					accounts[count++] = v;
+			accounts = Arrays.copyOf(accounts, count);
+			
+			used = new boolean[transactions.size()];
+			matchedWith = new int[transactions.size()];
+			Arrays.fill(matchedWith, -1);
+		}
+		
+		// keeps the accounts with a transaction at index from or later, the last one of each side in file order
+		void keepAccountsFrom(int from)
+		{
+			int count = 0;
+			for (int v : accounts)
+				if (received[receivedStart[v + 1] - 1] >= from || sent[sentStart[v + 1] - 1] >= from)
+					accounts[count++] = v;
+			accounts = Arrays.copyOf(accounts, count);
+		}
+		
+		// counting sort of the transactions by sender (or receiver), start gets the offset of every account
+		static int[] index(TransactionStore transactions, boolean bySender, int[] start)
+		{
+			for (int j = 0; j < transactions.size(); j++)
+				start[(bySender ? transactions.sender(j) : transactions.receiver(j)) + 1]++;
+			for (int v = 0; v + 1 < start.length; v++)
+				start[v + 1] += start[v];
+			
+			int[] next = Arrays.copyOf(start, start.length - 1);
+			int[] index = new int[transactions.size()];
+			for (int j = 0; j < transactions.size(); j++)
+				index[next[bySender ? transactions.sender(j) : transactions.receiver(j)]++] = j;
+			return index;
+		}
+		
+		int size(int p)
+		{
+			int v = accounts[p];
+			return sentStart[v + 1] - sentStart[v] + receivedStart[v + 1] - receivedStart[v];
+		}
+	}
+	
+	
+	// splits the intermediate accounts in halves until a partition is small enough to match on one thread
+	class MatchPartitions extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		Partitions partitions;
+		int from, to;
+		
+		MatchPartitions(Partitions partitions, int from, int to)
+		{
+			this.partitions = partitions;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute()
+		{
+			int size = 0;
+			for (int p = from; p < to && size < PARTITION_SIZE; p++)
+				size += partitions.size(p);
+			
+			if (to - from == 1 || size < PARTITION_SIZE)
+			{
+				for (int p = from; p < to; p++)
+					matchAccount(partitions, partitions.accounts[p]);
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new MatchPartitions(partitions, from, middle), new MatchPartitions(partitions, middle, to));
+		}
+	}
+	
+	
+	// conditions 2 and 3 for one hop u->v, v->w of a chain, with the time check of this matcher
+	boolean matchesHop(TransactionStore transactions, int incoming, int outgoing)
+	{
+		if (timeVariance == null)
+			return matches(transactions, incoming, outgoing);
+		
+		return Math.abs(transactions.amount(incoming) - transactions.amount(outgoing)) <= allowedAmountDifference
+				&& timeVariance.score(transactions.time(outgoing) - transactions.time(incoming)) > 0;
+	}
+	
+	
+	// score of a hop that passes matchesHop, higher is better: the time variance score, 1 for the simplified time check
+	double hopScore(TransactionStore transactions, int incoming, int outgoing)
+	{
+		if (timeVariance == null)
+			return 1.0;
+		return timeVariance.score(transactions.time(outgoing) - transactions.time(incoming));
+	}
+	
+	
+	// condition 2 (amount) and 3 (time) of trx matching algorithm
+	boolean matches(TransactionStore transactions, int incoming, int outgoing)
+	{
+		double amountDifference = Math.abs(transactions.amount(incoming) - transactions.amount(outgoing));
+		int timeDifference = transactions.time(incoming) - transactions.time(outgoing);
+		
+		// within same timeframe. This is the simplified version, see TimeVarianceFunction for the sliding window version
+		return amountDifference <= allowedAmountDifference && timeDifference <= allowedTimeDifference;
+	}
+	
+}
@@ -0,0 +1,383 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Parser of transactions.txt (#transaction-id, sender-node, receiver-node, amount, time) and nodes.txt 
+ * (one account per line) that works on the bytes of the file.
+ * 
+ * The file is memory mapped in windows that end on a line break, and the fields of every line are decoded 
+ * from the bytes straight into the columns of a TransactionStore, without a String per line or per field.
+ * As with the line reader it replaces, lines starting with # and blank lines are skipped, spaces around a 
+ * field are ignored and so are the fields after the last one used. A malformed line throws a 
+ * NumberFormatException with its line number.
+ * 
+ * With parallelism > 1 the file is split into chunks that start after a line break, and the chunks are 
+ * parsed on a fork-join pool, each into a store with its own AccountRegistry. The chunks are then appended 
+ * in file order: the accounts of every chunk are interned in the order the chunk saw them, which is the 
+ * order a single reader would have seen them, so the ordinals are the same as with one thread.
+ */
+public class TransactionParser {
+
+	static final int WINDOW = 1 << 30;  // bytes mapped at once
+	static final int FIELDS = 5;
+	static final int MIN_CHUNK = 1 << 20;  // bytes, smaller files are not split
+	static final int CHUNKS_PER_THREAD = 4;
+	
+	final int[] fields;  // fields of the current line
+	long line;  // line breaks passed, for the error messages
+	String problem;  // of the malformed line
+	
+	
+	TransactionParser(int fields)
+	{
+		this.fields = new int[fields];
+	}
+	
+	
+	// accounts that are not in the registry of the store are added to it
+	public static void read(String path, TransactionStore transactions) throws IOException
+	{
+		read(path, transactions, 1);
+	}
+	
+	
+	public static void read(String path, TransactionStore transactions, int parallelism) throws IOException
+	{
+		read(path, FIELDS, transactions, parallelism, WINDOW);
+	}
+	
+	
+	// accounts of nodes.txt are added to the registry in file order
+	public static void readAccounts(String path, AccountRegistry accounts, int parallelism) throws IOException
+	{
+		read(path, 1, new TransactionStore(accounts, 0), parallelism, WINDOW);
+	}
+	
+	
+	// lines of fields fields, one field lines only intern the account of the line
+	static void read(String path, int fields, TransactionStore transactions, int parallelism, int window) throws IOException
+	{
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"))
+		{
+			FileChannel channel = file.getChannel();
+			int count = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, channel.size() / MIN_CHUNK));
+			if (parallelism <= 1 || count == 1)
+			{
+				new TransactionParser(fields).parse(channel, 0, channel.size(), window, transactions);
+				return;
+			}
+			
+			Chunk[] chunks = chunks(channel, count, fields);
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try
+			{
+				pool.invoke(new ParseChunks(channel, chunks, window, 0, chunks.length));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+			append(chunks, transactions);
+		}
+	}
+	
+	
+	// parses the lines of the file from from to to (the end of a line or of the file) 
+	void parse(FileChannel channel, long from, long to, int window, TransactionStore transactions) throws IOException
+	{
+		long position = from;
+		while (position < to)
+		{
+			int length = (int) Math.min(window, to - position);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			
+			// the last line of the window continues in the next one
+			int end = length;
+			if (position + length < to)
+			{
+				end = lastLineBreak(buffer, length) + 1;
+				if (end == 0)
+					throw new IOException("Line " + (line + 1) + " is longer than " + window + " bytes");
+			}
+			
+			parse(buffer, 0, end, transactions);
+			position += end;
+		}
+	}
+	
+	
+	// count chunks of about the same size, every chunk but the first starts after a line break
+	static Chunk[] chunks(FileChannel channel, int count, int fields) throws IOException
+	{
+		long size = channel.size();
+		Chunk[] chunks = new Chunk[count];
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long from = 0;
+		for (int c = 0; c < count; c++)
+		{
+			long to = c == count - 1 ? size : nextLine(channel, Math.max(from, size * (c + 1) / count), buffer);
+			chunks[c] = new Chunk(from, to, fields);
+			from = to;
+		}
+		return chunks;
+	}
+	
+	
+	// start of the first line that starts at position or after it
+	static long nextLine(FileChannel channel, long position, ByteBuffer buffer) throws IOException
+	{
+		if (position == 0)
+			return 0;
+		
+		long start = position - 1;
+		while (true)
+		{
+			buffer.clear();
+			int read = channel.read(buffer, start);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return start + i + 1;
+			start += read;
+		}
+	}
+	
+	
+	// appends the chunks to the store in file order, stops at the first malformed line like a single reader
+	static void append(Chunk[] chunks, TransactionStore transactions) throws IOException
+	{
+		int size = transactions.size();
+		for (Chunk chunk : chunks)
+			size += chunk.transactions.size();
+		transactions.ensureCapacity(size);
+		
+		long lines = 0;
+		for (Chunk chunk : chunks)
+		{
+			AccountRegistry accounts = chunk.transactions.accounts();
+			int[] ordinals = new int[accounts.size()];
+			for (int ordinal = 0; ordinal < ordinals.length; ordinal++)
+				ordinals[ordinal] = transactions.accounts().intern(accounts.account(ordinal));
+			if (chunk.parser.fields.length == FIELDS)
+				transactions.append(chunk.transactions, ordinals);
+			
+			if (chunk.error instanceof NumberFormatException)
+				throw new NumberFormatException("Line " + (lines + chunk.parser.line + 1) + ": " + chunk.parser.problem);
+			if (chunk.error != null)
+				throw (IOException) chunk.error;
+			lines += chunk.parser.line;
+		}
+	}
+	
+	
+	// bytes from from to to of the file and their transactions
+	static class Chunk
+	{
+		long from, to;
+		TransactionParser parser;
+		TransactionStore transactions;
+		Exception error;  // NumberFormatException or IOException that stopped the chunk
+		
+		Chunk(long from, long to, int fields)
+		{
+			this.from = from;
+			this.to = to;
+			parser = new TransactionParser(fields);
+			
+			// transaction lines of DataGenerator are 16 bytes or more, so the columns rarely grow
+			int capacity = fields == FIELDS ? (int) Math.min((to - from) / 16, Integer.MAX_VALUE - 8) : 0;
+			transactions = new TransactionStore(new AccountRegistry(), capacity);
+		}
+	}
+	
+	
+	// splits the chunks in halves until one is left
+	static class ParseChunks extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		FileChannel channel;
+		Chunk[] chunks;
+		int window;
+		int from, to;
+		
+		ParseChunks(FileChannel channel, Chunk[] chunks, int window, int from, int to)
+		{
+			this.channel = channel;
+			this.chunks = chunks;
+			this.window = window;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				Chunk chunk = chunks[from];
+				try
+				{
+					chunk.parser.parse(channel, chunk.from, chunk.to, window, chunk.transactions);
+				}
+				catch (NumberFormatException | IOException e)
+				{
+					chunk.error = e;
+				}
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new ParseChunks(channel, chunks, window, from, middle), new ParseChunks(channel, chunks, window, middle, to));
+		}
+	}
+	
+	
+	// position of the last \n before end, -1 if there is none
+	static int lastLineBreak(ByteBuffer buffer, int end)
+	{
+		int position = end - 1;
+		while (position >= 0 && buffer.get(position) != '\n')
+			position--;
+		return position;
+	}
+	
+	
+	// parses the lines of buffer[from, to) into the store, to is the end of a line or of the file
+	void parse(ByteBuffer buffer, int from, int to, TransactionStore transactions)
+	{
+		int position = from;
+		while (position < to)
+		{
+			byte first = buffer.get(position);
+			if (first == '\n')
+			{
+				line++;
+				position++;
+			}
+			else if (first == '\r')
+				position++;
+			else if (first == '#' || blank(buffer, position, to))
+				position = lineEnd(buffer, position, to);
+			else
+			{
+				position = parseLine(buffer, position, to);
+				if (fields.length == FIELDS)
+					transactions.add(fields[0], fields[1], fields[2], fields[3], fields[4]);
+				else
+					transactions.accounts().intern(fields[0]);
+			}
+		}
+	}
+	
+	
+	// decodes the fields of the line starting at position, returns the end of the line
+	int parseLine(ByteBuffer buffer, int position, int to)
+	{
+		for (int f = 0; f < fields.length; f++)
+		{
+			position = skipSpaces(buffer, position, to);
+			
+			boolean negative = false;
+			if (position < to && (buffer.get(position) == '-' || buffer.get(position) == '+'))
+				negative = buffer.get(position++) == '-';
+			
+			// one more than Integer.MAX_VALUE for Integer.MIN_VALUE 
+			long value = 0;
+			int start = position;
+			while (position < to)
+			{
+				int digit = buffer.get(position) - '0';
+				if (digit < 0 || digit > 9)
+					break;
+				value = value * 10 + digit;
+				if (value > 1L + Integer.MAX_VALUE)
+					throw error("field " + (f + 1) + " is out of the int range");
+				position++;
+			}
+			if (position == start)
+				throw error("field " + (f + 1) + " is not a number");
+			if (negative)
+				value = -value;
+			if (value > Integer.MAX_VALUE)
+				throw error("field " + (f + 1) + " is out of the int range");
+			fields[f] = (int) value;
+			
+			position = skipSpaces(buffer, position, to);
+			byte next = position < to ? buffer.get(position) : (byte) '\n';
+			if (f < fields.length - 1)
+			{
+				if (next != ',')
+					throw error("expected " + fields.length + " fields separated by ,");
+				position++;
+			}
+			else if (next != ',' && next != '\n' && next != '\r')
+				throw error("field " + (f + 1) + " is not a number");
+		}
+		
+		return lineEnd(buffer, position, to);
+	}
+	
+	
+	// true if the line of position only has spaces
+	static boolean blank(ByteBuffer buffer, int position, int to)
+	{
+		position = skipSpaces(buffer, position, to);
+		return position == to || buffer.get(position) == '\n' || buffer.get(position) == '\r';
+	}
+	
+	
+	static int skipSpaces(ByteBuffer buffer, int position, int to)
+	{
+		while (position < to && (buffer.get(position) == ' ' || buffer.get(position) == '\t'))
+			position++;
+		return position;
+	}
+	
+	
+	// position of the \n or \r ending the line of position, or to
+	static int lineEnd(ByteBuffer buffer, int position, int to)
+	{
+		while (position < to && buffer.get(position) != '\n' && buffer.get(position) != '\r')
+			position++;
+		return position;
+	}
+	
+	
+	NumberFormatException error(String message)
+	{
+		problem = message;
+		return new NumberFormatException("Line " + (line + 1) + ": " + message);
+	}
+	
+}
@@ -0,0 +1,236 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Column oriented store of transactions.
+ * 
+ * Every field of a transaction is kept in its own primitive array, indexed by the position of the 
+ * transaction in transactions.txt, instead of one FinancialTransaction (and two FinancialNode) objects per row.
+ * Senders and receivers are stored as ordinals of the AccountRegistry of the store.
+ * get(i) and asList() give a FinancialTransaction view for code that still expects objects.
+ */
+public class TransactionStore {
+
+	int size;
+	AccountRegistry accounts;
+	
+	// columns
+	int[] id;		// transaction id 
+	int[] sender;	// ordinal of the account sending the funds
+	int[] receiver; // ordinal of the account receiving the funds
+	int[] amount;
+	int[] time;
+	int[] weight;
+	
+	
+	public TransactionStore(AccountRegistry accounts)
+	{
+		this(accounts, 1024);
+	}
+	
+	
+	public TransactionStore(AccountRegistry accounts, int capacity)
+	{
+		this.accounts = accounts;
+		capacity = Math.max(capacity, 16);
+		id = new int[capacity];
+		sender = new int[capacity];
+		receiver = new int[capacity];
+		amount = new int[capacity];
+		time = new int[capacity];
+		weight = new int[capacity];
+	}
+	
+	
+	// appends a transaction between two account numbers and returns its index
+	public int add(int id, int sender, int receiver, int amount, int time)
+	{
+		if (size == this.id.length)
+			grow();
+		
+		this.id[size] = id;
+		this.sender[size] = accounts.intern(sender);
+		this.receiver[size] = accounts.intern(receiver);
+		this.amount[size] = amount;
+		this.time[size] = time;
+		return size++;
+	}
+	
+	
+	// appends the transactions of a store with another registry, ordinals maps its ordinals to the ordinals of this store
+	void append(TransactionStore transactions, int[] ordinals)
+	{
+		ensureCapacity(size + transactions.size);
+		System.arraycopy(transactions.id, 0, id, size, transactions.size);
+		System.arraycopy(transactions.amount, 0, amount, size, transactions.size);
+		System.arraycopy(transactions.time, 0, time, size, transactions.size);
+		System.arraycopy(transactions.weight, 0, weight, size, transactions.size);
+		for (int i = 0; i < transactions.size; i++)
+		{
+			sender[size + i] = ordinals[transactions.sender[i]];
+			receiver[size + i] = ordinals[transactions.receiver[i]];
+		}
+		size += transactions.size;
+	}
+	
+	
+	void grow()
+	{
+		ensureCapacity(id.length + (id.length >> 1));
+	}
+	
+	
+	void ensureCapacity(int capacity)
+	{
+		if (capacity <= id.length)
+			return;
+		
+		id = Arrays.copyOf(id, capacity);
+		sender = Arrays.copyOf(sender, capacity);
+		receiver = Arrays.copyOf(receiver, capacity);
+		amount = Arrays.copyOf(amount, capacity);
+		time = Arrays.copyOf(time, capacity);
+		weight = Arrays.copyOf(weight, capacity);
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public AccountRegistry accounts()
+	{
+		return accounts;
+	}
+	
+	public int id(int i)
+	{
+		return id[i];
+	}
+	
+	// ordinal of the sender
+	public int sender(int i)
+	{
+		return sender[i];
+	}
+	
+	// ordinal of the receiver
+	public int receiver(int i)
+	{
+		return receiver[i];
+	}
+	
+	public int senderAccount(int i)
+	{
+		return accounts.account(sender[i]);
+	}
+	
+	public int receiverAccount(int i)
+	{
+		return accounts.account(receiver[i]);
+	}
+	
+	public int amount(int i)
+	{
+		return amount[i];
+	}
+	
+	public int time(int i)
+	{
+		return time[i];
+	}
+	
+	public int weight(int i)
+	{
+		return weight[i];
+	}
+	
+	public void setWeight(int i, int weight)
+	{
+		this.weight[i] = weight;
+	}
+	
+	
+	// new FinancialTransaction with the values of transaction i, sender and receiver are the shared nodes of the registry.
+	// Changes to it are not written back
+	public FinancialTransaction get(int i)
+	{
+		FinancialTransaction t = new FinancialTransaction();
+		t.name = id[i];
+		t.sender = accounts.node(sender[i]);
+		t.receiver = accounts.node(receiver[i]);
+		t.amount = amount[i];
+		t.time = time[i];
+		t.weight = weight[i];
+		t.index = i;
+		return t;
+	}
+	
+	
+	// read only list of FinancialTransaction views, created on every get
+	public List<FinancialTransaction> asList()
+	{
+		return new AbstractList<FinancialTransaction>()
+		{
+			public FinancialTransaction get(int index)
+			{
+				if (index >= size)
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+				return TransactionStore.this.get(index);
+			}
+
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+	
+	
+	public static TransactionStore of(List<FinancialTransaction> transactions)
+	{
+		TransactionStore store = new TransactionStore(new AccountRegistry(), transactions.size());
+		for (FinancialTransaction t : transactions)
+		{
+			int i = store.add(t.name, t.sender.name, t.receiver.name, t.amount, t.time);
+			store.weight[i] = t.weight;
+		}
+		return store;
+	}
+	
+	
+	public String toStringFile(int i)
+	{
+		// #transaction-id, sender-node, receiver-node, amount, time 
+		return id[i] + "," + accounts.account(sender[i]) + "," + accounts.account(receiver[i]) + "," + amount[i] + "," + time[i];
+	}
+	
+}
@@ -28,24 +28,90 @@ import java.util.*;
 
 public class Util
 {
-    public static <K, V extends Comparable<? super V>> Map<K, V> 
-        sortMapByValue( Map<K, V> map )
+    /*
+     * Indexes 0..count-1 of the values that are >= threshold, ordered by value (highest first, ties by index).
+     * With k > 0 only the k highest are kept.
+     * 
+     * The values are partitioned by the threshold and only the survivors go into a bounded heap 
+     * (worst survivor at the root), so the cost is O(count + s log min(s, k)) for s survivors, without boxing.
+     * NaN values never survive.
+     */
+    public static int[] selectTopK( double[] values, int count, double threshold, int k )
     {
-        List<Map.Entry<K, V>> list =
-            new LinkedList<Map.Entry<K, V>>( map.entrySet() );
-        Collections.sort( list, new Comparator<Map.Entry<K, V>>()
+        int[] heap = new int[16];
+        int size = 0;
+        for (int i = 0; i < count; i++)
         {
-            public int compare( Map.Entry<K, V> o1, Map.Entry<K, V> o2 )
+            if (!(values[i] >= threshold))
+                continue;
+            
+            if (k <= 0 || size < k)
             {
-                return (o2.getValue()).compareTo( o1.getValue() );
+                if (size == heap.length)
+                    heap = Arrays.copyOf( heap, size * 2 );
+                heap[size] = i;
+                siftUp( values, heap, size++ );
             }
-        } );
-
-        Map<K, V> result = new LinkedHashMap<K, V>();
-        for (Map.Entry<K, V> entry : list)
+            else if (better( values, i, heap[0] ))
+            {
+                heap[0] = i;
+                siftDown( values, heap, 0, size );
+            }
+        }
+        
+        // remove the worst survivor until the heap is empty, the best ends up first
+        int[] selected = new int[size];
+        for (int last = size - 1; last >= 0; last--)
+        {
+            selected[last] = heap[0];
+            heap[0] = heap[last];
+            siftDown( values, heap, 0, last );
+        }
+        return selected;
+    }
+    
+    
+    // higher value first, lower index on ties
+    static boolean better( double[] values, int a, int b )
+    {
+        return values[a] > values[b] || (values[a] == values[b] && a < b);
+    }
+    
+    
+    static void siftUp( double[] values, int[] heap, int child )
+    {
+        while (child > 0)
+        {
+            int parent = (child - 1) >>> 1;
+            if (!better( values, heap[parent], heap[child] ))
+                return;
+            swap( heap, parent, child );
+            child = parent;
+        }
+    }
+    
+    
+    static void siftDown( double[] values, int[] heap, int parent, int size )
+    {
+        while (true)
         {
-            result.put( entry.getKey(), entry.getValue() );
+            int worst = parent, left = 2 * parent + 1, right = left + 1;
+            if (left < size && better( values, heap[worst], heap[left] ))
+                worst = left;
+            if (right < size && better( values, heap[worst], heap[right] ))
+                worst = right;
+            if (worst == parent)
+                return;
+            swap( heap, parent, worst );
+            parent = worst;
         }
-        return result;
+    }
+    
+    
+    static void swap( int[] a, int i, int j )
+    {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
     }
 }
\ No newline at end of file
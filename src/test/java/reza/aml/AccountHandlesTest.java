@@ -0,0 +1,94 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the handles given by registry ordinal in step 2 are the nodes steps 3 to 5 see for the accounts.
+ */
+public class AccountHandlesTest 
+    extends TestCase
+{
+    public void testStepsAgreeOnOrdinals()
+    {
+    	TransactionStore transactions = TransactionStore.of(TransactionMatcherTest.randomTransactions(5, 300, 6000));
+    	AccountRegistry accounts = transactions.accounts();
+    	LinkedHashMap<FinancialTransaction, FinancialTransaction> pairs = new TransactionMatcher(10000, 100, 2).match(transactions);
+    	assertFalse(pairs.isEmpty());
+    	
+    	// step 2 as in App, weights counted by ordinal on the side
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	AccountHandles handles = new AccountHandles(accounts, graph);
+    	int[] sumOfOutgoing = new int[accounts.size()], sumOfIncoming = new int[accounts.size()];
+    	for (Map.Entry<FinancialTransaction, FinancialTransaction> pair : pairs.entrySet())
+    	{
+    		for (FinancialTransaction t : new FinancialTransaction[] { pair.getKey(), pair.getValue() })
+    		{
+    			graph.addOrIncrementEdge(handles.upsert(t.sender), handles.upsert(t.receiver), t.amount, t.time, t.name);
+    			sumOfOutgoing[t.sender.ordinal]++;
+    			sumOfIncoming[t.receiver.ordinal]++;
+    		}
+    	}
+    	
+    	// every account has one node, with its id and the weights of its ordinal (step 3)
+    	int mapped = 0;
+    	for (int ordinal = 0; ordinal < accounts.size(); ordinal++)
+    	{
+    		int handle = handles.handles[ordinal];
+    		if (handle < 0)
+    		{
+    			assertEquals(0, sumOfOutgoing[ordinal] + sumOfIncoming[ordinal]);
+    			assertEquals(-1, handles.find(accounts.account(ordinal)));
+    			continue;
+    		}
+    		mapped++;
+    		assertEquals(accounts.account(ordinal), graph.nodeId(handle));
+    		assertEquals(handle, graph.findNode(accounts.account(ordinal)));
+    		assertEquals(handle, handles.find(accounts.account(ordinal)));
+    		assertEquals(sumOfOutgoing[ordinal], graph.weights().sumOfOutgoing[handle]);
+    		assertEquals(sumOfIncoming[ordinal], graph.weights().sumOfIncoming[handle]);
+    	}
+    	assertEquals(graph.nodeCount(), mapped);
+    	
+    	// step 5 keeps groups by account id, the ids lead back to the handles of their ordinals
+    	ArrayList<long[]> densePairs = new ArrayList<long[]>();
+    	for (int node = 0; node + 1 < graph.nodeCount(); node += 2)
+    		densePairs.add(new long[] { graph.nodeId(node), graph.nodeId(node + 1) });
+    	GroupTracker tracker = new GroupTracker();
+    	tracker.update(densePairs);
+    	assertEquals(graph.nodeCount() / 2 * 2, tracker.joined.size());
+    	for (long account : tracker.joined)
+    		assertEquals(handles.handles[accounts.ordinal((int) account)], handles.find(account));
+    	
+    	// ids outside the registry (shared nodes of step 3.5) are found in the graph
+    	int shared = graph.createNode(1000000000001L);
+    	assertEquals(shared, handles.find(1000000000001L));
+    }
+}
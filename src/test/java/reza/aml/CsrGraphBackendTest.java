@@ -0,0 +1,124 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the in memory graph used by steps 2 to 5.
+ */
+public class CsrGraphBackendTest 
+    extends TestCase
+{
+    public void testEdgesAreMergedAndWeighted()
+    {
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	int a = graph.upsertNode(11);
+    	int b = graph.upsertNode(22);
+    	
+    	assertEquals(a, graph.upsertNode(11));
+    	assertEquals(-1, graph.findNode(33));
+    	assertEquals(1, graph.addOrIncrementEdge(a, b, 10000, 1, 1));
+    	assertEquals(2, graph.addOrIncrementEdge(a, b, 10050, 2, 2));
+    	
+    	assertEquals(weights(b, 2), outEdges(graph, a));
+    	assertEquals(weights(a, 2), inEdges(graph, b));
+    	assertEquals(2, graph.weights().sumOfOutgoing[a]);
+    	assertEquals(2, graph.weights().sumOfIncoming[b]);
+    	assertEquals(1, graph.weights().inDegree[b]);
+    	assertEquals(11L, graph.nodeId(a));
+    	assertEquals(22L, ((Number) graph.getProperty(b, "id")).longValue());
+    }
+    
+    
+    public void testEdgesAddedAfterVisitingAreSeen()
+    {
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	int a = graph.upsertNode(1);
+    	int b = graph.upsertNode(2);
+    	graph.addOrIncrementEdge(a, b, 10000, 1, 1);
+    	assertEquals(weights(b, 1), outEdges(graph, a));
+    	
+    	// a new node and edges after the graph was compacted, like the shared nodes of step 3.5
+    	int shared = graph.createNode(1000000000001L);
+    	HashMap<String, Object> properties = new HashMap<String, Object>();
+    	properties.put("type", "sharedRelationship");
+    	graph.addEdge(shared, a, 5, properties);
+    	int sharedEdge = graph.edgeCount - 1;
+    	graph.addOrIncrementEdge(a, b, 10000, 2, 2);
+    	graph.addLabel(shared, "SHARED");
+    	
+    	assertEquals(weights(shared, 5), inEdges(graph, a));
+    	assertEquals(weights(b, 2), outEdges(graph, a));
+    	assertEquals(5, graph.weights().sumOfIncoming[a]);
+    	assertEquals(2, graph.weights().sumOfOutgoing[a]);
+    	assertEquals(1, graph.weights().outDegree[shared]);
+    	assertEquals(25.0 + 1, graph.weights().norm(a, true));
+    	assertEquals(2.0 * 2 + 1, graph.weights().norm(a, false));
+    	assertTrue(graph.hasLabel(shared, "SHARED"));
+    	assertFalse(graph.hasLabel(a, "SHARED"));
+    	assertEquals("sharedRelationship", graph.getEdgeProperty(sharedEdge, "type"));
+    	assertNull(graph.getEdgeProperty(0, "type"));
+    }
+    
+    
+    static Map<Integer, Integer> weights(int node, int weight)
+    {
+    	HashMap<Integer, Integer> weights = new HashMap<Integer, Integer>();
+    	weights.put(node, weight);
+    	return weights;
+    }
+    
+    
+    static Map<Integer, Integer> outEdges(GraphBackend graph, int node)
+    {
+    	final HashMap<Integer, Integer> weights = new HashMap<Integer, Integer>();
+    	graph.forEachOutEdge(node, new GraphBackend.EdgeVisitor()
+    	{
+    		public void visit(int other, int weight)
+    		{
+    			weights.put(other, weight);
+    		}
+    	});
+    	return weights;
+    }
+    
+    
+    static Map<Integer, Integer> inEdges(GraphBackend graph, int node)
+    {
+    	final HashMap<Integer, Integer> weights = new HashMap<Integer, Integer>();
+    	graph.forEachInEdge(node, new GraphBackend.EdgeVisitor()
+    	{
+    		public void visit(int other, int weight)
+    		{
+    			weights.put(other, weight);
+    		}
+    	});
+    	return weights;
+    }
+}
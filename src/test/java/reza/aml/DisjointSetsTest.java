@@ -0,0 +1,163 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the disjoint sets and the group tracker of step 5 with the connected components found by a graph search.
+ */
+public class DisjointSetsTest 
+    extends TestCase
+{
+    public void testSameAsConnectedComponents()
+    {
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		Random random = new Random(seed);
+    		int size = 200;
+    		int[][] pairs = new int[150][];
+    		DisjointSets sets = new DisjointSets(size);
+    		for (int p = 0; p < pairs.length; p++)
+    		{
+    			pairs[p] = new int[] { random.nextInt(size), random.nextInt(size) };
+    			sets.union(pairs[p][0], pairs[p][1]);
+    		}
+    		
+    		int[] component = components(size, pairs);
+    		for (int a = 0; a < size; a++)
+    			for (int b = 0; b < size; b++)
+    				assertEquals(component[a] == component[b], sets.find(a) == sets.find(b));
+    	}
+    }
+    
+    
+    public void testUnionOfJoinedSets()
+    {
+    	// (3,4) (1,2) (2,3) is one group, even though the first pair only meets the others through the last one
+    	DisjointSets sets = new DisjointSets(6);
+    	assertTrue(sets.union(3, 4));
+    	assertTrue(sets.union(1, 2));
+    	assertTrue(sets.union(2, 3));
+    	assertFalse(sets.union(4, 1));
+    	assertEquals(sets.find(1), sets.find(4));
+    	assertFalse(sets.find(0) == sets.find(1));
+    	assertEquals(5, sets.find(5));
+    }
+    
+    
+    public void testGroupTrackerSameAsFromScratch() throws Exception
+    {
+    	File storeDir = File.createTempFile("groups", "");
+    	storeDir.delete();
+    	storeDir.mkdir();
+    	
+    	Random random = new Random(3);
+    	int size = 60;
+    	ArrayList<int[]> pairs = new ArrayList<int[]>();
+    	HashSet<Integer> previous = new HashSet<Integer>();
+    	for (int run = 0; run < 30; run++)
+    	{
+    		// every run drops some dense pairs and finds some new ones
+    		for (int p = pairs.size() - 1; p >= 0; p--)
+    			if (random.nextInt(4) == 0)
+    				pairs.remove(p);
+    		for (int p = random.nextInt(12); p > 0; p--)
+    		{
+    			int a = random.nextInt(size), b = random.nextInt(size - 1);
+    			pairs.add(new int[] { a, b < a ? b : b + 1 });  // two different accounts
+    		}
+    		
+    		ArrayList<long[]> densePairs = new ArrayList<long[]>();
+    		for (int[] pair : pairs)
+    			densePairs.add(new long[] { 1000 + pair[0], 1000 + pair[1] });
+    		GroupTracker tracker = GroupTracker.load(storeDir.getPath());
+    		tracker.update(densePairs);
+    		tracker.save(storeDir.getPath());
+    		
+    		int[] component = components(size, pairs.toArray(new int[0][]));
+    		HashSet<Integer> grouped = new HashSet<Integer>();
+    		for (int[] pair : pairs)
+    		{
+    			grouped.add(pair[0]);
+    			grouped.add(pair[1]);
+    		}
+    		for (int a = 0; a < size; a++)
+    		{
+    			assertEquals(grouped.contains(a), tracker.inGroup(1000 + a));
+    			assertEquals(grouped.contains(a) && !previous.contains(a), tracker.joined.contains(1000L + a));
+    			assertEquals(!grouped.contains(a) && previous.contains(a), tracker.left.contains(1000L + a));
+    			for (int b = 0; b < size; b++)
+    				assertEquals(component[a] == component[b], tracker.group(1000 + a) == tracker.group(1000 + b));
+    		}
+    		previous = grouped;
+    	}
+    	
+    	new File(storeDir, GroupTracker.FILE).delete();
+    	storeDir.delete();
+    }
+    
+    
+    // component of every node by depth first search over the pairs
+    static int[] components(int size, int[][] pairs)
+    {
+    	ArrayList<ArrayList<Integer>> neighbours = new ArrayList<ArrayList<Integer>>();
+    	for (int node = 0; node < size; node++)
+    		neighbours.add(new ArrayList<Integer>());
+    	for (int[] pair : pairs)
+    	{
+    		neighbours.get(pair[0]).add(pair[1]);
+    		neighbours.get(pair[1]).add(pair[0]);
+    	}
+    	
+    	int[] component = new int[size];
+    	Arrays.fill(component, -1);
+    	for (int start = 0; start < size; start++)
+    	{
+    		if (component[start] >= 0)
+    			continue;
+    		ArrayList<Integer> stack = new ArrayList<Integer>();
+    		stack.add(start);
+    		component[start] = start;
+    		while (!stack.isEmpty())
+    		{
+    			int node = stack.remove(stack.size() - 1);
+    			for (int next : neighbours.get(node))
+    				if (component[next] < 0)
+    				{
+    					component[next] = start;
+    					stack.add(next);
+    				}
+    		}
+    	}
+    	return component;
+    }
+}
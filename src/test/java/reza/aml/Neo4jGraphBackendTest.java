@@ -0,0 +1,117 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a kept Neo4j store opens with the same nodes and weights from its saved files as from its edges.
+ */
+public class Neo4jGraphBackendTest 
+    extends TestCase
+{
+    public void testOpenReadsSavedWeights() throws Exception
+    {
+    	File storeDir = File.createTempFile("neo4j-store", "");
+    	storeDir.delete();
+    	String dir = storeDir.getPath();
+    	try
+    	{
+	    	Neo4jGraphBackend graph = new Neo4jGraphBackend(dir);
+	    	try (GraphBackend.Tx tx = graph.beginTx())
+	    	{
+	    		int a = graph.upsertNode(11), b = graph.upsertNode(22), c = graph.upsertNode(33);
+	    		graph.addOrIncrementEdge(a, b, 10000, 1, 1);
+	    		graph.addOrIncrementEdge(a, b, 10000, 2, 2);
+	    		graph.addOrIncrementEdge(b, c, 10000, 3, 3);
+	    		tx.success();
+	    	}
+	    	Neo4jGraphBackend.writeWatermark(dir, 3, 3, new Properties());
+	    	graph.saveNodes(dir, 3);
+	    	
+	    	// a shared node of step 3.5 changes the weights of the intermediate, the next run deletes it
+	    	try (GraphBackend.Tx tx = graph.beginTx())
+	    	{
+	    		int shared = graph.createNode(1000000000001L);
+	    		graph.addLabel(shared, "SHARED");
+	    		graph.addEdge(graph.findNode(22), shared, 1, new HashMap<String, Object>());
+	    		tx.success();
+	    	}
+	    	graph.saveShared(dir);
+	    	graph.shutdown();
+	    	assertTrue(new File(storeDir, Neo4jGraphBackend.SHARED).exists());
+	    	
+	    	// from the saved files
+    	graph = Neo4jGraphBackend.open(dir);
+    	assertFalse(new File(storeDir, Neo4jGraphBackend.SHARED).exists());  // until saveShared the next open reads every node
+    	String saved;
+    	try (GraphBackend.Tx tx = graph.beginTx())
+    	{
+    		assertEquals(3, graph.nodeCount());
+    		assertEquals(-1, graph.findNode(1000000000001L));
+    		assertEquals("11:0/2 0/1 0/4 22:2/1 1/1 4/1 33:1/0 1/0 1/0 ", weights(graph));
+    		
+    		// step 2 of the next run adds to the opened weights
+    		assertEquals(2, graph.addOrIncrementEdge(graph.findNode(22), graph.findNode(33), 10000, 4, 4));
+    		saved = weights(graph);
+    		assertEquals("11:0/2 0/1 0/4 22:2/2 1/1 4/4 33:2/0 1/0 4/0 ", saved);
+    		tx.success();
+    	}
+    	graph.shutdown();
+    	
+    	// from the edges, without the shared nodes file
+    	graph = Neo4jGraphBackend.open(dir);
+    	try (GraphBackend.Tx tx = graph.beginTx())
+    	{
+    		assertEquals(saved, weights(graph));
+    		tx.success();
+    	}
+    	graph.shutdown();
+    	}
+    	finally
+    	{
+    		FileUtils.deleteDirectory(storeDir);
+    	}
+    }
+    
+    
+    // incoming/outgoing weight, degree and squared weight of every node in handle order
+    static String weights(GraphBackend graph)
+    {
+    	NodeWeights weights = graph.weights();
+    	StringBuilder text = new StringBuilder();
+    	for (int node = 0; node < graph.nodeCount(); node++)
+    		text.append(graph.nodeId(node) + ":" + weights.sumOfIncoming[node] + "/" + weights.sumOfOutgoing[node] 
+    				+ " " + weights.inDegree[node] + "/" + weights.outDegree[node] 
+    				+ " " + weights.squaredIncoming[node] + "/" + weights.squaredOutgoing[node] + " ");
+    	return text.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the shared nodes of step 3.5.
+ */
+public class SharedNodesTest 
+    extends TestCase
+{
+    public void testIntermediatesOfLayeringPathsAreConnected()
+    {
+    	CsrGraphBackend graph = layeringGraph();
+    	SharedNodes sharedNodes = new SharedNodes(6, 100000);
+    	sharedNodes.build(graph);
+    	
+    	// 1 -> 2 -> 3 -> 4, 1 -> 5 -> 6 -> 4 and 1 -> 7 -> 4, the cycle 3 -> 2 is not followed
+    	assertEquals(3, sharedNodes.paths);
+    	assertFalse(sharedNodes.truncated);
+    	assertEquals(1, sharedNodes.sharedNodes);
+    	assertEquals(4, sharedNodes.sharedEdges);
+    	
+    	int shared = graph.findNode(1000000000001L);
+    	assertTrue(graph.hasLabel(shared, "SHARED"));
+    	
+    	// outgoing weights, incoming for the last intermediate of a path, 7 is the only intermediate of its path
+    	HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    	expected.put(graph.findNode(2), 2);
+    	expected.put(graph.findNode(3), 2);
+    	expected.put(graph.findNode(5), 1);
+    	expected.put(graph.findNode(6), 1);
+    	assertEquals(expected, CsrGraphBackendTest.outEdges(graph, shared));
+    	assertEquals(expected, CsrGraphBackendTest.inEdges(graph, shared));
+    }
+    
+    
+    public void testSearchIsBounded()
+    {
+    	// paths of at most 2 edges: only 1 -> 7 -> 4, which has a single intermediate
+    	CsrGraphBackend graph = layeringGraph();
+    	SharedNodes sharedNodes = new SharedNodes(2, 100000);
+    	sharedNodes.build(graph);
+    	assertEquals(1, sharedNodes.paths);
+    	assertEquals(0, sharedNodes.sharedNodes);
+    	
+    	graph = layeringGraph();
+    	sharedNodes = new SharedNodes(6, 1);
+    	sharedNodes.build(graph);
+    	assertEquals(1, sharedNodes.paths);
+    	assertTrue(sharedNodes.truncated);
+    	
+    	graph = layeringGraph();
+    	sharedNodes = new SharedNodes(6, 0);
+    	sharedNodes.build(graph);
+    	assertEquals(0, sharedNodes.paths);
+    	assertEquals(0, sharedNodes.sharedNodes);
+    	assertEquals(7, graph.nodeCount());
+    }
+    
+    
+    public void testEdgesMatchThePathsOfTheCypherMatch()
+    {
+    	// parallel edges 2 -> 3 and 5 -> 6, and the cycle 2 -> 3 -> 2 that a path can take once per edge
+    	long[][] edges = { {1, 2}, {2, 3}, {2, 3}, {3, 2}, {3, 4}, {1, 5}, {5, 6}, {5, 6}, {6, 4}, {1, 7}, {7, 4} };
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	for (int e = 0; e < edges.length; e++)
+    		graph.addEdge(graph.upsertNode(edges[e][0]), graph.upsertNode(edges[e][1]), e + 1, new HashMap<String, Object>());
+    	
+    	int[] sumOfIncoming = graph.weights().sumOfIncoming.clone();
+    	int[] sumOfOutgoing = graph.weights().sumOfOutgoing.clone();
+    	double[] balanceScores = graph.weights().balanceScores(graph.nodeCount());
+    	
+    	// one pair of edges per intermediate of every row of the Cypher match, enumerated edge by edge
+    	List<String> expected = new ArrayList<String>();
+    	long[] rows = new long[1];
+    	int[] path = new int[edges.length + 1];
+    	path[0] = graph.findNode(1);
+    	rowsFrom(graph, edges, new boolean[edges.length], path, 0, 6, balanceScores, sumOfIncoming, sumOfOutgoing, expected, rows);
+    	Collections.sort(expected);
+    	
+    	SharedNodes sharedNodes = new SharedNodes(6, 100000);
+    	sharedNodes.build(graph);
+    	
+    	// 1 -> 2 -> 3 -> 4 twice, 1 -> 2 -> 3 -> 2 -> 3 -> 4 twice, 1 -> 5 -> 6 -> 4 twice and 1 -> 7 -> 4
+    	assertEquals(7, rows[0]);
+    	assertEquals(rows[0], sharedNodes.paths);
+    	assertEquals(1, sharedNodes.sharedNodes);
+    	assertEquals(expected.size(), sharedNodes.sharedEdges);
+    	assertEquals(16, expected.size());
+    	
+    	final int shared = graph.findNode(1000000000001L);
+    	final List<String> out = new ArrayList<String>();
+    	final List<String> in = new ArrayList<String>();
+    	graph.forEachOutEdge(shared, new GraphBackend.EdgeVisitor()
+    	{
+    		public void visit(int other, int weight)
+    		{
+    			out.add(other + ":" + weight);
+    		}
+    	});
+    	graph.forEachInEdge(shared, new GraphBackend.EdgeVisitor()
+    	{
+    		public void visit(int other, int weight)
+    		{
+    			in.add(other + ":" + weight);
+    		}
+    	});
+    	Collections.sort(out);
+    	Collections.sort(in);
+    	assertEquals(expected, out);
+    	assertEquals(expected, in);
+    }
+    
+    
+    // reference: every sender to receiver path that uses no edge twice, as node:weight of its intermediates
+    static void rowsFrom(CsrGraphBackend graph, long[][] edges, boolean[] used, int[] path, int depth, int maxPathLength,
+    		double[] balanceScores, int[] sumOfIncoming, int[] sumOfOutgoing, List<String> expected, long[] rows)
+    {
+    	if (depth == maxPathLength)
+    		return;
+    	for (int e = 0; e < edges.length; e++)
+    	{
+    		if (used[e] || graph.findNode(edges[e][0]) != path[depth])
+    			continue;
+    		int to = graph.findNode(edges[e][1]);
+    		if (sumOfOutgoing[to] == 0)
+    		{
+    			rows[0]++;
+    			int intermediates = 0;
+    			for (int d = 1; d <= depth; d++)
+    				if (balanceScores[path[d]] >= 0)
+    					intermediates++;
+    			if (intermediates < 2)
+    				continue;
+    			int position = 0;
+    			for (int d = 1; d <= depth; d++)
+    			{
+    				if (balanceScores[path[d]] < 0)
+    					continue;
+    				position++;
+    				expected.add(path[d] + ":" + (position == intermediates ? sumOfIncoming[path[d]] : sumOfOutgoing[path[d]]));
+    			}
+    			continue;
+    		}
+    		used[e] = true;
+    		path[depth + 1] = to;
+    		rowsFrom(graph, edges, used, path, depth + 1, maxPathLength, balanceScores, sumOfIncoming, sumOfOutgoing, expected, rows);
+    		used[e] = false;
+    	}
+    }
+    
+    
+    static CsrGraphBackend layeringGraph()
+    {
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	long[][] edges = { {1, 2}, {2, 3}, {2, 3}, {3, 4}, {3, 2}, {1, 5}, {5, 6}, {6, 4}, {1, 7}, {7, 4} };
+    	for (int e = 0; e < edges.length; e++)
+    		graph.addOrIncrementEdge(graph.upsertNode(edges[e][0]), graph.upsertNode(edges[e][1]), 10000, e + 1, e + 1);
+    	return graph;
+    }
+}
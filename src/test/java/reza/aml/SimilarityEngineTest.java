@@ -0,0 +1,396 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the similarity engine of step 4 with the formula computed edge by edge.
+ */
+public class SimilarityEngineTest 
+    extends TestCase
+{
+    public void testSameAsEdgeByEdge()
+    {
+    	final CsrGraphBackend graph = randomGraph(5, 40, 300);
+    	final ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	for (int n = 0; n < graph.nodeCount(); n += 2)
+    		candidates.add(n);
+    	
+    	final SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    	final int[] visited = new int[1];
+    	engine.forEachPair(new SimilarityEngine.PairVisitor()
+    	{
+    		public void visit(int i, int j, double similarity)
+    		{
+    			assertTrue(i < j);
+    			double expected = edgeByEdge(graph, candidates.get(i), candidates.get(j));
+    			assertEquals(expected, similarity, 1e-12);
+    			assertEquals(expected, engine.similarity(i, j), 1e-12);
+    			visited[0]++;
+    		}
+    	});
+    	assertEquals(candidates.size() * (candidates.size() - 1) / 2, visited[0]);
+    }
+    
+    
+    public void testCandidatePairsAreTheNonZeroPairs()
+    {
+    	CsrGraphBackend graph = randomGraph(9, 60, 200);
+    	ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	for (int n = 0; n < graph.nodeCount(); n++)
+    		candidates.add(n);
+    	SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    	
+    	final ArrayList<String> all = new ArrayList<String>(), wedges = new ArrayList<String>();
+    	engine.forEachPair(new SimilarityEngine.PairVisitor()
+    	{
+    		public void visit(int i, int j, double similarity)
+    		{
+    			if (similarity != 0.0)
+    				all.add(i + " " + j + " " + similarity);
+    		}
+    	});
+    	engine.forEachCandidatePair(new SimilarityEngine.PairVisitor()
+    	{
+    		public void visit(int i, int j, double similarity)
+    		{
+    			wedges.add(i + " " + j + " " + similarity);
+    		}
+    	});
+    	
+    	assertFalse(all.isEmpty());
+    	assertEquals(all, wedges);
+    	assertEquals(all.size(), engine.scoredPairs);
+    }
+    
+    
+    public void testParallelSameAsSequential()
+    {
+    	// a hub receiving from and sending to many nodes gives its row most of the wedges
+    	CsrGraphBackend graph = randomGraph(13, 400, 6000);
+    	for (int n = 1; n < graph.nodeCount(); n += 3)
+    	{
+    		graph.addOrIncrementEdge(n, 0, 10000, 1, -n);
+    		graph.addOrIncrementEdge(0, n, 10000, 1, -n);
+    	}
+    	ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	for (int n = 0; n < graph.nodeCount(); n++)
+    		candidates.add(n);
+    	
+    	SimilarityEngine sequential = new SimilarityEngine(graph, candidates);
+    	SimilarityEngine parallel = new SimilarityEngine(graph, candidates);
+    	parallel.parallelism = 4;
+    	
+    	ArrayList<String> expected = pairs(sequential), actual = pairs(parallel);
+    	assertFalse(expected.isEmpty());
+    	assertTrue(parallel.blocks().length > 2);
+    	assertEquals(expected, actual);
+    	assertEquals(sequential.scoredPairs, parallel.scoredPairs);
+    }
+    
+    
+    public void testPruningKeepsDensePairs()
+    {
+    	long pruned = 0;
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		CsrGraphBackend graph = randomGraph(seed, 50, 400);
+    		ArrayList<Integer> candidates = new ArrayList<Integer>();
+    		for (int n = 0; n < graph.nodeCount(); n++)
+    			candidates.add(n);
+    		
+    		for (double threshold : new double[] { 0.05, 0.1, 0.2, 0.3 })
+    		{
+    			SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    			ArrayList<String> expected = densePairs(engine, threshold);
+    			
+    			engine.minSimilarity = threshold;
+    			assertEquals(expected, densePairs(engine, threshold));
+    			pruned += engine.prunedPairs + engine.prunedRows;
+    			
+    			engine.parallelism = 4;
+    			assertEquals(expected, densePairs(engine, threshold));
+    		}
+    	}
+    	assertTrue(pruned > 0);
+    }
+    
+    
+    public void testMinHashFindsDensePairs()
+    {
+    	int found = 0, dense = 0;
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		ArrayList<Integer> candidates = new ArrayList<Integer>();
+    		CsrGraphBackend graph = groupGraph(seed, 100, candidates);
+    		SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    		ArrayList<String> expected = densePairs(engine, 0.2);
+    		
+    		// proposed pairs are scored exactly, so the dense ones are a subset of the exact dense pairs
+    		final ArrayList<String> approximate = new ArrayList<String>();
+    		engine.forEachPair(new MinHashLsh(32, 1, seed).propose(engine), new SimilarityEngine.PairVisitor()
+    		{
+    			public void visit(int i, int j, double similarity)
+    			{
+    				if (similarity >= 0.2)
+    					approximate.add(i + " " + j + " " + similarity);
+    			}
+    		});
+    		assertTrue(expected.containsAll(approximate));
+    		found += approximate.size();
+    		dense += expected.size();
+    	}
+    	assertTrue(dense > 0);
+    	assertTrue(found + " of " + dense, found >= 0.9 * dense);
+    }
+    
+    
+    public void testMinHashSkipsLargeBuckets()
+    {
+    	// every candidate has the same sender and receiver, so they share the bucket of every band
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	int sender = graph.upsertNode(1), receiver = graph.upsertNode(2);
+    	ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	for (int n = 0; n < 50; n++)
+    	{
+    		int candidate = graph.upsertNode(n + 3);
+    		graph.addOrIncrementEdge(sender, candidate, 10000, 1, 2 * n);
+    		graph.addOrIncrementEdge(candidate, receiver, 10000, 2, 2 * n + 1);
+    		candidates.add(candidate);
+    	}
+    	SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    	
+    	MinHashLsh lsh = new MinHashLsh(4, 1, 1);
+    	lsh.maxBucketSize = 50;
+    	assertEquals(50 * 49 / 2, lsh.propose(engine).length);
+    	assertEquals(0, lsh.skippedBuckets);
+    	
+    	lsh.maxBucketSize = 0;
+    	try
+    	{
+    		lsh.propose(engine);
+    		fail();
+    	}
+    	catch (IllegalArgumentException e)
+    	{
+    	}
+    	
+    	lsh.maxBucketSize = 10;
+    	assertEquals(0, lsh.propose(engine).length);
+    	assertEquals(4, lsh.skippedBuckets);
+    	assertEquals(4L * 50 * 49 / 2, lsh.skippedPairs);
+    }
+    
+    
+    public void testSparseMatrixSameAsEngine()
+    {
+    	CsrGraphBackend graph = randomGraph(11, 30, 150);
+    	ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	for (int n = 0; n < graph.nodeCount(); n++)
+    		candidates.add(n);
+    	SimilarityEngine engine = new SimilarityEngine(graph, candidates);
+    	
+    	final SparseSimilarityMatrix matrix = new SparseSimilarityMatrix(candidates.size());
+    	engine.forEachCandidatePair(new SimilarityEngine.PairVisitor()
+    	{
+    		public void visit(int i, int j, double similarity)
+    		{
+    			matrix.add(i, j, similarity);
+    		}
+    	});
+    	
+    	int nonZero = 0;
+    	for (int i = 0; i < candidates.size(); i++)
+    		for (int j = i + 1; j < candidates.size(); j++)
+    			if (engine.similarity(i, j) != 0)
+    				nonZero++;
+    	assertEquals(nonZero, matrix.entries());
+    	for (int e = 0; e < matrix.entries(); e++)
+    		assertEquals(engine.similarity(matrix.row(e), matrix.column(e)), matrix.value(e), 1e-12);
+    	
+    	try
+    	{
+    		matrix.add(0, 1, 1.0);
+    		fail("pairs have to be added in row order");
+    	}
+    	catch (IllegalArgumentException e)
+    	{
+    	}
+    }
+    
+    
+    public void testSelfWeight()
+    {
+    	// u and v both receive from x and send to y with weight 1
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	int x = graph.upsertNode(1), u = graph.upsertNode(2), v = graph.upsertNode(3), y = graph.upsertNode(4);
+    	graph.addOrIncrementEdge(x, u, 10000, 1, 1);
+    	graph.addOrIncrementEdge(x, v, 10000, 1, 2);
+    	graph.addOrIncrementEdge(u, y, 10000, 2, 3);
+    	graph.addOrIncrementEdge(v, y, 10000, 2, 4);
+    	
+    	ArrayList<Integer> candidates = new ArrayList<Integer>();
+    	candidates.add(u);
+    	candidates.add(v);
+    	// each term is 1 / (sqrt(1 + 1) * sqrt(1 + 1))
+    	assertEquals(0.25, new SimilarityEngine(graph, candidates).similarity(0, 1), 1e-12);
+    }
+    
+    
+    static ArrayList<String> pairs(SimilarityEngine engine)
+    {
+    	final ArrayList<String> pairs = new ArrayList<String>();
+    	engine.forEachCandidatePair(new SimilarityEngine.PairVisitor()
+    	{
+    		public void visit(int i, int j, double similarity)
+    		{
+    			pairs.add(i + " " + j + " " + similarity);
+    		}
+    	});
+    	return pairs;
+    }
+    
+    
+    static ArrayList<String> densePairs(SimilarityEngine engine, double threshold)
+    {
+    	ArrayList<String> dense = new ArrayList<String>();
+    	for (String pair : pairs(engine))
+    		if (Double.parseDouble(pair.split(" ")[2]) >= threshold)
+    			dense.add(pair);
+    	return dense;
+    }
+    
+    
+    // every pair of edges x-u, x-v is multiplied, like the original Cypher match
+    static double edgeByEdge(GraphBackend graph, int u, int v)
+    {
+    	double termOne = cosine(edges(graph, u, true), edges(graph, v, true));
+    	double termTwo = cosine(edges(graph, u, false), edges(graph, v, false));
+    	return termOne * termTwo;
+    }
+    
+    
+    static double cosine(ArrayList<int[]> edgesOfU, ArrayList<int[]> edgesOfV)
+    {
+    	double nominator = 0.0, normU = 1.0, normV = 1.0;
+    	for (int[] a : edgesOfU)
+    	{
+    		normU += a[1] * a[1];
+    		for (int[] b : edgesOfV)
+    			if (a[0] == b[0])
+    				nominator += a[1] * b[1];
+    	}
+    	for (int[] b : edgesOfV)
+    		normV += b[1] * b[1];
+    	return nominator / (Math.sqrt(normU) * Math.sqrt(normV));
+    }
+    
+    
+    static ArrayList<int[]> edges(GraphBackend graph, int node, boolean incoming)
+    {
+    	final ArrayList<int[]> edges = new ArrayList<int[]>();
+    	GraphBackend.EdgeVisitor collect = new GraphBackend.EdgeVisitor()
+    	{
+    		public void visit(int other, int weight)
+    		{
+    			edges.add(new int[] { other, weight });
+    		}
+    	};
+    	if (incoming)
+    		graph.forEachInEdge(node, collect);
+    	else
+    		graph.forEachOutEdge(node, collect);
+    	return edges;
+    }
+    
+    
+    // groups of candidates sharing some of their senders and receivers, with a few other edges each
+    static CsrGraphBackend groupGraph(long seed, int groups, ArrayList<Integer> candidates)
+    {
+    	Random random = new Random(seed);
+    	int nodes = groups * 20;
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	for (int n = 0; n < nodes; n++)
+    		graph.upsertNode(n + 1);
+    	
+    	boolean[] candidate = new boolean[nodes];
+    	for (int g = 0; g < groups; g++)
+    	{
+    		int shared = 1 + random.nextInt(3);
+    		int[] senders = new int[shared], receivers = new int[shared];
+    		for (int s = 0; s < shared; s++)
+    		{
+    			senders[s] = random.nextInt(nodes);
+    			receivers[s] = random.nextInt(nodes);
+    		}
+    		
+    		for (int m = 2 + random.nextInt(4); m > 0; m--)
+    		{
+    			int node = random.nextInt(nodes);
+    			candidate[node] = true;
+    			for (int s = 0; s < shared; s++)
+    			{
+    				if (random.nextInt(4) > 0)
+    					graph.addOrIncrementEdge(senders[s], node, 10000, 1, 0);
+    				if (random.nextInt(4) > 0)
+    					graph.addOrIncrementEdge(node, receivers[s], 10000, 1, 0);
+    			}
+    			for (int e = random.nextInt(3); e > 0; e--)
+    			{
+    				graph.addOrIncrementEdge(random.nextInt(nodes), node, 10000, 1, 0);
+    				graph.addOrIncrementEdge(node, random.nextInt(nodes), 10000, 1, 0);
+    			}
+    		}
+    	}
+    	for (int n = 0; n < nodes; n++)
+    		if (candidate[n])
+    			candidates.add(n);
+    	return graph;
+    }
+    
+    
+    // weighted edges between few nodes, with some parallel edges like the shared nodes of step 3.5 add
+    static CsrGraphBackend randomGraph(long seed, int nodes, int edges)
+    {
+    	Random random = new Random(seed);
+    	CsrGraphBackend graph = new CsrGraphBackend();
+    	for (int n = 0; n < nodes; n++)
+    		graph.upsertNode(n + 1);
+    	for (int e = 0; e < edges; e++)
+    	{
+    		int from = random.nextInt(nodes), to = random.nextInt(nodes);
+    		if (random.nextInt(10) == 0)
+    			graph.addEdge(from, to, random.nextInt(5) + 1, new HashMap<String, Object>());
+    		else
+    			graph.addOrIncrementEdge(from, to, 10000, 1, e);
+    	}
+    	return graph;
+    }
+}
@@ -0,0 +1,121 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that transactions.bin reads back the store it was written from.
+ */
+public class TransactionFileTest 
+    extends TestCase
+{
+    public void testSameAsText() throws IOException
+    {
+    	File nodes = TransactionParserTest.write("#node\n5\n7\n9\n");
+    	File text = TransactionParserTest.write(TransactionParserTest.randomFile(1, 2000));
+    	AccountRegistry accounts = new AccountRegistry();
+    	TransactionParser.readAccounts(nodes.getPath(), accounts, 1);
+    	TransactionStore transactions = new TransactionStore(accounts);
+    	TransactionParser.read(text.getPath(), transactions);
+    	
+    	File binary = File.createTempFile("transactions", ".bin");
+    	binary.deleteOnExit();
+    	TransactionFile.write(binary.getPath(), transactions, 3, nodes.getPath(), text.getPath());
+    	TransactionFile transactionFile = TransactionFile.read(binary.getPath());
+    	TransactionStore read = transactionFile.transactions();
+    	
+    	assertEquals(3, transactionFile.nodes());
+    	assertEquals(TransactionParserTest.rows(transactions), TransactionParserTest.rows(read));
+    	assertEquals(accounts.size(), read.accounts().size());
+    	for (int i = 0; i < transactions.size(); i++)
+    	{
+    		assertEquals(transactions.sender(i), read.sender(i));
+    		assertEquals(transactions.receiver(i), read.receiver(i));
+    		assertTrue(read.amount(i) >= transactionFile.min(TransactionFile.AMOUNT) && read.amount(i) <= transactionFile.max(TransactionFile.AMOUNT));
+    	}
+    	assertEquals(Integer.MIN_VALUE, transactionFile.min(TransactionFile.TIME));
+    	assertEquals(Integer.MAX_VALUE, transactionFile.max(TransactionFile.AMOUNT));
+    	
+    	// the text changed after the binary file was written, also when the binary file looks newer
+    	assertTrue(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	long written = text.lastModified();
+    	text.setLastModified(written - 1000);
+    	binary.setLastModified(written + 1000);
+    	assertFalse(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	text.setLastModified(written);
+    	assertTrue(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	
+    	// same time, other size
+    	FileWriter append = new FileWriter(text, true);
+    	append.write("\n");
+    	append.close();
+    	text.setLastModified(written);
+    	assertFalse(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	
+    	nodes.delete();
+    	text.delete();
+    	binary.delete();
+    }
+    
+    
+    public void testTruncatedFileIsNotCurrent() throws IOException
+    {
+    	File nodes = TransactionParserTest.write("#node\n5\n7\n9\n");
+    	File text = TransactionParserTest.write(TransactionParserTest.randomFile(2, 200));
+    	AccountRegistry accounts = new AccountRegistry();
+    	TransactionParser.readAccounts(nodes.getPath(), accounts, 1);
+    	TransactionStore transactions = new TransactionStore(accounts);
+    	TransactionParser.read(text.getPath(), transactions);
+    	
+    	File binary = File.createTempFile("transactions", ".bin");
+    	binary.deleteOnExit();
+    	TransactionFile.write(binary.getPath(), transactions, 3, nodes.getPath(), text.getPath());
+    	assertTrue(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	
+    	// a half written file keeps its complete header
+    	RandomAccessFile file = new RandomAccessFile(binary, "rw");
+    	file.setLength(file.length() - 4);
+    	file.close();
+    	assertFalse(TransactionFile.isCurrent(binary.getPath(), nodes.getPath(), text.getPath()));
+    	try
+    	{
+    		TransactionFile.read(binary.getPath());
+    		fail("truncated file read");
+    	}
+    	catch (IOException e)
+    	{
+    	}
+    	
+    	nodes.delete();
+    	text.delete();
+    	binary.delete();
+    }
+}
@@ -0,0 +1,315 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Research paper is available on https://ieeexplore.ieee.org/document/7777919
+ * Paper authors: Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub, Aijun An
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the step 1 matchers with the original nested loop of App.
+ */
+public class TransactionMatcherTest 
+    extends TestCase
+{
+	static final double amountThreshold = 10000;
+	static final double allowedAmountDifference = 100.0;
+	static final double allowedTimeDifference = 2;
+	
+	
+    public void testHashJoinSameAsNestedLoop()
+    {
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		ArrayList<FinancialTransaction> transactions = randomTransactions(seed, 40, 600);
+    		TransactionMatcher matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+    		assertEquals(nestedLoop(transactions), matcher.match(TransactionStore.of(transactions)));
+    	}
+    }
+    
+    
+    public void testSlidingWindowSameAsFullScan()
+    {
+    	TimeVarianceFunction[] functions = {
+    			TimeVarianceFunction.absolute(allowedTimeDifference),
+    			TimeVarianceFunction.directional(allowedTimeDifference),
+    			TimeVarianceFunction.decaying(6, 2) };
+    	
+    	for (TimeVarianceFunction function : functions)
+    	{
+    		for (int seed = 1; seed <= 5; seed++)
+    		{
+    			ArrayList<FinancialTransaction> transactions = randomTransactions(seed, 40, 600);
+    			TransactionMatcher matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, function);
+    			Map<FinancialTransaction, FinancialTransaction> pairs = matcher.match(TransactionStore.of(transactions));
+    			
+    			assertFalse(pairs.isEmpty());
+    			assertEquals(fullScan(transactions, function), pairs);
+    		}
+    	}
+    }
+    
+    
+    public void testParallelSameAsSequential()
+    {
+    	TransactionStore transactions = TransactionStore.of(randomTransactions(7, 2000, 60000));
+    	
+    	TransactionMatcher sequential = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+    	TransactionMatcher parallel = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+    	parallel.parallelism = 4;
+    	assertEquals(sequential.match(transactions), parallel.match(transactions));
+    	
+    	TimeVarianceFunction function = TimeVarianceFunction.decaying(6, 2);
+    	sequential = new TransactionMatcher(amountThreshold, allowedAmountDifference, function);
+    	parallel = new TransactionMatcher(amountThreshold, allowedAmountDifference, function);
+    	parallel.parallelism = 4;
+    	assertEquals(sequential.match(transactions), parallel.match(transactions));
+    }
+    
+    
+    public void testAppendedTransactionsOnly()
+    {
+    	TransactionStore transactions = TransactionStore.of(randomTransactions(3, 2000, 60000));
+    	TransactionMatcher[] matchers = {
+    			new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference),
+    			new TransactionMatcher(amountThreshold, allowedAmountDifference, TimeVarianceFunction.decaying(6, 2)) };
+    	
+    	for (TransactionMatcher matcher : matchers)
+    	{
+    		HashMap<FinancialTransaction, FinancialTransaction> all = matcher.match(transactions);
+    		for (int from : new int[] { 1, 30000, 59900, 60000 })
+    		{
+    			HashMap<FinancialTransaction, FinancialTransaction> expected = new HashMap<FinancialTransaction, FinancialTransaction>();
+    			for (Map.Entry<FinancialTransaction, FinancialTransaction> pair : all.entrySet())
+    				if (pair.getKey().index >= from || pair.getValue().index >= from)
+    					expected.put(pair.getKey(), pair.getValue());
+    			assertEquals(expected, matcher.match(transactions, from));
+    		}
+    	}
+    }
+    
+    
+    public void testDecayingRejectsNonPositiveHalfLife()
+    {
+    	double[] halfLives = { 0, -1, Double.NaN };
+    	for (double halfLife : halfLives)
+    	{
+    		try
+    		{
+    			TimeVarianceFunction.forName("decaying", allowedTimeDifference, halfLife);
+    			fail("half-life " + halfLife + " accepted");
+    		}
+    		catch (IllegalArgumentException e)
+    		{
+    		}
+    	}
+    	assertEquals(1.0, TimeVarianceFunction.forName("decaying", allowedTimeDifference, 0.5).score(0));
+    }
+    
+    
+    public void testChainOfOneSameAsPairs()
+    {
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		TransactionStore transactions = TransactionStore.of(randomTransactions(seed, 40, 600));
+    		TransactionMatcher matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+    		assertEquals(matcher.match(transactions), new ChainMatcher(matcher, allowedAmountDifference, 1).match(transactions));
+    	}
+    }
+    
+    
+    public void testChainMatcherFollowsLayering()
+    {
+    	// 1 -> 2 -> 3 -> 4 -> 5 with a small drift on every hop, and a transaction 3 -> 6 that drifted too far from the first amount
+    	ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
+    	transactions.add(transaction(1, 1, 2, 10000, 1));
+    	transactions.add(transaction(2, 2, 3, 9960, 1));
+    	transactions.add(transaction(3, 3, 6, 9870, 2));
+    	transactions.add(transaction(4, 3, 4, 9920, 2));
+    	transactions.add(transaction(5, 4, 5, 9900, 3));
+    	
+    	TransactionMatcher matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference);
+    	ChainMatcher chainMatcher = new ChainMatcher(matcher, 110, 3);
+    	Map<FinancialTransaction, FinancialTransaction> pairs = chainMatcher.match(TransactionStore.of(transactions));
+    	
+    	assertEquals(1, chainMatcher.chains.size());
+    	assertEquals(4, chainMatcher.chains.get(0).length);
+    	HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    	expected.put(1, 2);
+    	expected.put(2, 4);
+    	expected.put(4, 5);
+    	assertEquals(expected, ids(pairs));
+    }
+    
+    
+    public void testChainMatcherTakesBestScoringHop()
+    {
+    	// two hops 2 -> 3 that only differ in time, the later one in the file is closer to the money arriving at 2
+    	TimeVarianceFunction function = TimeVarianceFunction.decaying(6, 2);
+    	for (int order = 0; order < 2; order++)
+    	{
+    		ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
+    		transactions.add(transaction(1, 1, 2, 10000, 1));
+    		transactions.add(transaction(order == 0 ? 2 : 3, 2, 3, 9950, order == 0 ? 5 : 2));
+    		transactions.add(transaction(order == 0 ? 3 : 2, 2, 3, 9950, order == 0 ? 2 : 5));
+    		transactions.add(transaction(4, 3, 4, 9900, 6));
+    		TransactionStore store = TransactionStore.of(transactions);
+    		
+    		TransactionMatcher matcher = new TransactionMatcher(amountThreshold, allowedAmountDifference, function);
+    		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    		expected.put(1, 3);
+    		assertEquals(expected, ids(matcher.match(store)));
+    		
+    		expected.put(3, 4);
+    		assertEquals(expected, ids(new ChainMatcher(matcher, 110, 3).match(store)));
+    	}
+    }
+    
+    
+    public void testDirectionalRejectsDistantOutgoing()
+    {
+    	ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
+    	transactions.add(transaction(1, 1, 2, 10000, 1));
+    	transactions.add(transaction(2, 2, 3, 9950, 20));  // sent long after the money arrived
+    	
+    	TransactionStore store = TransactionStore.of(transactions);
+    	assertEquals(1, new TransactionMatcher(amountThreshold, allowedAmountDifference, allowedTimeDifference).match(store).size());
+    	assertTrue(new TransactionMatcher(amountThreshold, allowedAmountDifference, TimeVarianceFunction.directional(allowedTimeDifference)).match(store).isEmpty());
+    }
+    
+    
+    // sliding window matching without the window: every incoming transaction of an account, in time order,
+    // is compared with every outgoing transaction of that account
+    static HashMap<FinancialTransaction, FinancialTransaction> fullScan(ArrayList<FinancialTransaction> transactions, TimeVarianceFunction function)
+    {
+    	ArrayList<FinancialTransaction> byTime = new ArrayList<FinancialTransaction>(transactions);
+    	Collections.sort(byTime, new Comparator<FinancialTransaction>()
+		{
+			public int compare(FinancialTransaction o1, FinancialTransaction o2)
+			{
+				return Integer.compare(o1.time, o2.time);
+			}
+		});
+    	
+    	HashMap<FinancialTransaction, FinancialTransaction> pairs = new HashMap<FinancialTransaction, FinancialTransaction>();
+    	HashSet<FinancialTransaction> used = new HashSet<FinancialTransaction>();
+    	for (FinancialTransaction in : byTime)
+    	{
+    		if (in.amount < amountThreshold)
+    			continue;
+    		
+    		FinancialTransaction best = null;
+    		double bestScore = 0.0;
+    		for (FinancialTransaction out : byTime)
+    		{
+    			if (out == in || used.contains(out) || out.sender.name != in.receiver.name 
+    					|| Math.abs(in.amount - out.amount) > allowedAmountDifference)
+    				continue;
+    			double score = function.score(out.time - in.time);
+    			if (score > bestScore)
+    			{
+    				best = out;
+    				bestScore = score;
+    			}
+    		}
+    		if (best != null)
+    		{
+    			used.add(best);
+    			pairs.put(in, best);
+    		}
+    	}
+    	return pairs;
+    }
+    
+    
+    // original step 1 of App
+    static HashMap<FinancialTransaction, FinancialTransaction> nestedLoop(ArrayList<FinancialTransaction> transactions)
+    {
+    	HashMap<FinancialTransaction, FinancialTransaction> pairs = new HashMap<FinancialTransaction, FinancialTransaction>();
+    	for (int i = 0; i < transactions.size(); i++)
+    	{
+    		for (int j = 0; j < transactions.size(); j++)
+    		{
+    			if (i == j || pairs.containsKey(transactions.get(i)) || pairs.containsValue(transactions.get(j)))
+    				continue;
+    			
+    			double amountDifference = Math.abs(transactions.get(i).amount - transactions.get(j).amount);
+    			int timeDifference = transactions.get(i).time - transactions.get(j).time;
+    			
+    			if (transactions.get(j).sender.name == transactions.get(i).receiver.name 
+    					&& transactions.get(i).amount >= amountThreshold
+    					&& amountDifference <= allowedAmountDifference
+    					&& timeDifference <= allowedTimeDifference)
+    				pairs.put(transactions.get(i), transactions.get(j));
+    		}
+    	}
+    	return pairs;
+    }
+    
+    
+    // small account space and amounts around the threshold so that many transactions chain
+    static ArrayList<FinancialTransaction> randomTransactions(long seed, int accounts, int size)
+    {
+    	Random random = new Random(seed);
+    	ArrayList<FinancialTransaction> transactions = new ArrayList<FinancialTransaction>();
+    	for (int i = 0; i < size; i++)
+    		transactions.add(transaction(i + 1, random.nextInt(accounts) + 1, random.nextInt(accounts) + 1, 9850 + random.nextInt(300), random.nextInt(24) + 1));
+    	return transactions;
+    }
+    
+    
+    static FinancialTransaction transaction(int name, int sender, int receiver, int amount, int time)
+    {
+    	FinancialTransaction t = new FinancialTransaction();
+    	t.name = name;
+    	t.sender = new FinancialNode();
+    	t.sender.name = sender;
+    	t.receiver = new FinancialNode();
+    	t.receiver.name = receiver;
+    	t.amount = amount;
+    	t.time = time;
+    	return t;
+    }
+    
+    
+    // compares pairs by transaction id, the store gives new FinancialTransaction views
+    static void assertEquals(Map<FinancialTransaction, FinancialTransaction> expected, Map<FinancialTransaction, FinancialTransaction> actual)
+    {
+    	assertEquals(ids(expected), ids(actual));
+    }
+    
+    
+    static HashMap<Integer, Integer> ids(Map<FinancialTransaction, FinancialTransaction> pairs)
+    {
+    	HashMap<Integer, Integer> ids = new HashMap<Integer, Integer>();
+    	for (Map.Entry<FinancialTransaction, FinancialTransaction> pair : pairs.entrySet())
+    		ids.put(pair.getKey().name, pair.getValue().name);
+    	return ids;
+    }
+}
@@ -0,0 +1,203 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the parser of transactions.txt with the original line reader of Input.
+ */
+public class TransactionParserTest 
+    extends TestCase
+{
+    public void testSameAsLineReader() throws IOException
+    {
+    	for (int seed = 1; seed <= 5; seed++)
+    	{
+    		String text = randomFile(seed, 500);
+    		File file = write(text);
+    		
+    		// windows of every size split lines in different places
+    		for (int window : new int[] { 64, 100, 1000, TransactionParser.WINDOW })
+    		{
+    			TransactionStore transactions = new TransactionStore(new AccountRegistry());
+    			TransactionParser.read(file.getPath(), TransactionParser.FIELDS, transactions, 1, window);
+    			assertEquals(lineReader(text), rows(transactions));
+    		}
+    		file.delete();
+    	}
+    }
+    
+    
+    public void testMalformedLineIsReported() throws IOException
+    {
+    	File file = write("# header\n1,2,3,10000,1\n\n2,3,4,9950,x\n3,4,5,9900,3\n");
+    	TransactionStore transactions = new TransactionStore(new AccountRegistry());
+    	try
+    	{
+    		TransactionParser.read(file.getPath(), transactions);
+    		fail();
+    	}
+    	catch (NumberFormatException e)
+    	{
+    		assertTrue(e.getMessage(), e.getMessage().startsWith("Line 4:"));
+    	}
+    	assertEquals(1, transactions.size());
+    	file.delete();
+    }
+    
+    
+    public void testParallelSameAsSequential() throws IOException
+    {
+    	// a few MIN_CHUNK of lines, and a malformed line near the end
+    	String text = randomFile(3, 200000);
+    	File file = write(text);
+    	File malformed = write(text.substring(0, text.length() - 1000) + "\n1,2,3,4\n" + text.substring(text.length() - 1000));
+    	
+    	for (File f : new File[] { file, malformed })
+    	{
+    		TransactionStore sequential = new TransactionStore(new AccountRegistry());
+    		String sequentialError = read(f, sequential, 1);
+    		TransactionStore parallel = new TransactionStore(new AccountRegistry());
+    		String parallelError = read(f, parallel, 4);
+    		
+    		assertTrue(sequential.size() > 100000);
+    		assertEquals(sequentialError, parallelError);
+    		assertEquals(rows(sequential), rows(parallel));
+    		for (int i = 0; i < sequential.size(); i++)
+    		{
+    			assertEquals(sequential.sender(i), parallel.sender(i));
+    			assertEquals(sequential.receiver(i), parallel.receiver(i));
+    		}
+    	}
+    	assertNotNull(read(malformed, new TransactionStore(new AccountRegistry()), 4));
+    	
+    	// accounts of nodes.txt get the ordinals of the file order
+    	StringBuilder nodes = new StringBuilder("#node\n");
+    	Random random = new Random(3);
+    	for (int i = 0; i < 300000; i++)
+    		nodes.append(random.nextInt(100000)).append(i % 100 == 0 ? " \n\n" : "\n");
+    	File nodesFile = write(nodes.toString());
+    	AccountRegistry sequentialAccounts = new AccountRegistry();
+    	TransactionParser.readAccounts(nodesFile.getPath(), sequentialAccounts, 1);
+    	AccountRegistry parallelAccounts = new AccountRegistry();
+    	TransactionParser.readAccounts(nodesFile.getPath(), parallelAccounts, 4);
+    	assertEquals(sequentialAccounts.size(), parallelAccounts.size());
+    	for (int ordinal = 0; ordinal < sequentialAccounts.size(); ordinal++)
+    		assertEquals(sequentialAccounts.account(ordinal), parallelAccounts.account(ordinal));
+    	
+    	file.delete();
+    	malformed.delete();
+    	nodesFile.delete();
+    }
+    
+    
+    // message of the malformed line, null if there is none
+    static String read(File file, TransactionStore transactions, int parallelism) throws IOException
+    {
+    	try
+    	{
+    		TransactionParser.read(file.getPath(), transactions, parallelism);
+    		return null;
+    	}
+    	catch (NumberFormatException e)
+    	{
+    		return e.getMessage();
+    	}
+    }
+    
+    
+    // lines written by DataGenerator, with comments, empty lines, spaces, \r\n line breaks and extra fields
+    static String randomFile(long seed, int size)
+    {
+    	Random random = new Random(seed);
+    	StringBuilder text = new StringBuilder("#transaction-id, sender-node, receiver-node, amount, time\n");
+    	for (int i = 0; i < size; i++)
+    	{
+    		switch (random.nextInt(8))
+    		{
+    		case 0:
+    			text.append("# comment ").append(i).append('\n');
+    			break;
+    		case 1:
+    			text.append(random.nextBoolean() ? "\n" : "\r\n");
+    			break;
+    		case 2:
+    			text.append(i).append(", ").append(random.nextInt(1000)).append(" ,").append(-random.nextInt(50))
+    					.append(",\t").append(Integer.MAX_VALUE).append(", ").append(Integer.MIN_VALUE).append(",extra\r\n");
+    			break;
+    		default:
+    			text.append(i).append(',').append(random.nextInt(1000)).append(',').append(random.nextInt(1000))
+    					.append(',').append(random.nextInt(20000)).append(',').append(random.nextInt(24) + 1).append('\n');
+    		}
+    	}
+    	text.append("99999,1,2,3,4");  // no line break at the end
+    	return text.toString();
+    }
+    
+    
+    // original readTransactionStore of Input
+    static ArrayList<String> lineReader(String text)
+    {
+    	ArrayList<String> rows = new ArrayList<String>();
+    	for (String line : text.split("\r?\n"))
+    	{
+    		if (!line.startsWith("#") && !line.isEmpty())
+    		{
+    			String[] oneTransaction = line.split(",");
+    			rows.add(Integer.parseInt(oneTransaction[0]) + "," + Integer.parseInt(oneTransaction[1].trim()) + "," + Integer.parseInt(oneTransaction[2].trim())
+    					+ "," + Integer.parseInt(oneTransaction[3].trim()) + "," + Integer.parseInt(oneTransaction[4].trim()));
+    		}
+    	}
+    	return rows;
+    }
+    
+    
+    static ArrayList<String> rows(TransactionStore transactions)
+    {
+    	ArrayList<String> rows = new ArrayList<String>();
+    	for (int i = 0; i < transactions.size(); i++)
+    		rows.add(transactions.toStringFile(i));
+    	return rows;
+    }
+    
+    
+    static File write(String text) throws IOException
+    {
+    	File file = File.createTempFile("transactions", ".txt");
+    	file.deleteOnExit();
+    	try (FileOutputStream out = new FileOutputStream(file))
+    	{
+    		out.write(text.getBytes("US-ASCII"));
+    	}
+    	return file;
+    }
+}
@@ -0,0 +1,85 @@
+/* 
+   Copyright 2019 Reza Soltani
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/* 
+ * Implementation of 'A new algorithm for money laundering detection based on structural similarity' research paper. 
+ * Reza Soltani, Uyen Trang Nguyen, Yang Yang, Mohammad Faghani, Alaa Yagoub and Aijun An, "A new algorithm for money laundering detection based on structural similarity," 2016 IEEE 7th Annual Ubiquitous Computing, Electronics & Mobile Communication Conference (UEMCON), New York, NY, 2016, pp. 1-7.
+ * doi: 10.1109/UEMCON.2016.7777919
+ * keywords: {financial data processing;globalisation;money laundering detection;structural similarity;financial transactions;global market;money laundering transactions;financial data;ML activities;ML groups;Receivers;Topology;Clustering methods;Government;Clustering algorithms;Network topology;Money laundering;money laundering detection;graph theory;structural similarity},
+ * URL: http://ieeexplore.ieee.org/stamp/stamp.jsp?tp=&arnumber=7777919&isnumber=7777798
+ */
+
+package reza.aml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the selection of step 3 with sorting every score.
+ */
+public class UtilTest 
+    extends TestCase
+{
+    public void testSelectTopKSameAsSort()
+    {
+    	Random random = new Random(3);
+    	for (int size : new int[] { 0, 1, 10, 1000 })
+    	{
+    		// few distinct values so that there are many ties, and some NaN like nodes without incoming edges
+    		double[] values = new double[size];
+    		for (int i = 0; i < size; i++)
+    			values[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(20) / 10.0;
+    		
+    		for (int k : new int[] { 0, 1, 5, 2000 })
+    		{
+    			int[] expected = sorted(values, 0.5, k);
+    			int[] selected = Util.selectTopK(values, size, 0.5, k);
+    			assertEquals(expected.length, selected.length);
+    			for (int i = 0; i < expected.length; i++)
+    				assertEquals(expected[i], selected[i]);
+    		}
+    	}
+    }
+    
+    
+    // every index above the threshold, sorted by value (highest first) and index 
+    static int[] sorted(final double[] values, double threshold, int k)
+    {
+    	ArrayList<Integer> indexes = new ArrayList<Integer>();
+    	for (int i = 0; i < values.length; i++)
+    		if (values[i] >= threshold)
+    			indexes.add(i);
+    	
+    	Collections.sort(indexes, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				int c = Double.compare(values[o2], values[o1]);
+				return c != 0 ? c : Integer.compare(o1, o2);
+			}
+		});
+    	
+    	int size = k > 0 ? Math.min(k, indexes.size()) : indexes.size();
+    	int[] sorted = new int[size];
+    	for (int i = 0; i < size; i++)
+    		sorted[i] = indexes.get(i);
+    	return sorted;
+    }
+}